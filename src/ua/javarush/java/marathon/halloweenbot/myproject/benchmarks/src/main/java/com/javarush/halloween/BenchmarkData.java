@@ -0,0 +1,105 @@
+package com.javarush.halloween;
+
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.api.objects.photo.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.MessageEntity;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Заготовлені вхідні дані для бенчмарків: події Telegram і картинки
+ */
+final class BenchmarkData {
+    private static final long CHAT_ID = 1_000_001L;
+
+    private BenchmarkData() {
+    }
+
+    static Update command(String command) {
+        Message message = message(command);
+        message.setEntities(List.of(MessageEntity.builder()
+                .type("bot_command")
+                .offset(0)
+                .length(command.length())
+                .build()));
+        return update(message);
+    }
+
+    static Update text(String text) {
+        return update(message(text));
+    }
+
+    static Update photo() {
+        Message message = message(null);
+        message.setPhoto(List.of(PhotoSize.builder()
+                .fileId("file-id")
+                .fileUniqueId("file-unique-id")
+                .width(1280)
+                .height(1280)
+                .build()));
+        return update(message);
+    }
+
+    static Update button(String data) {
+        CallbackQuery query = new CallbackQuery();
+        query.setId("callback-id");
+        query.setFrom(user());
+        query.setData(data);
+        query.setMessage(message("menu"));
+
+        Update update = new Update();
+        update.setCallbackQuery(query);
+        return update;
+    }
+
+    /**
+     * PNG зі «шумом», щоб стиснення було реалістичним, а не ідеальним
+     */
+    static byte[] png(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(32);
+                int argb = 0xFF000000 | ((x * 255 / width + noise) & 0xFF) << 16 | ((y * 255 / height) & 0xFF) << 8 | noise;
+                image.setRGB(x, y, argb);
+            }
+        }
+
+        try {
+            var out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Message message(String text) {
+        Message message = new Message();
+        message.setMessageId(1);
+        message.setFrom(user());
+        message.setChat(Chat.builder().id(CHAT_ID).type("private").build());
+        message.setText(text);
+        return message;
+    }
+
+    private static User user() {
+        return User.builder().id(CHAT_ID).firstName("Bench").isBot(false).build();
+    }
+
+    private static Update update(Message message) {
+        Update update = new Update();
+        update.setMessage(message);
+        return update;
+    }
+}
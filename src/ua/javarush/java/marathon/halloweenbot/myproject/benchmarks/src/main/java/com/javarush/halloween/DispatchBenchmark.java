@@ -0,0 +1,84 @@
+package com.javarush.halloween;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вартість SimpleTelegramBot.consume(): маршрутизація події через повний набір
+ * обробників з HalloweenBoltApp.onInitialize(). Самі обробники підмінені заглушками,
+ * тому вимірюється лише диспетчеризація, без мережі.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    @Param({"command", "text", "photo", "button_first", "button_last", "button_unknown"})
+    public String kind;
+
+    private StubBot bot;
+    private Update update;
+
+    @Setup
+    public void setup() {
+        bot = new StubBot();
+        update = switch (kind) {
+            case "command" -> BenchmarkData.command("/video");
+            case "text" -> BenchmarkData.text("Зроби мене вампіром");
+            case "photo" -> BenchmarkData.photo();
+            case "button_first" -> BenchmarkData.button("create_anime");
+            case "button_last" -> BenchmarkData.button("video5");
+            default -> BenchmarkData.button("unknown_key");
+        };
+
+        // Перший виклик запускає onInitialize()
+        bot.consume(update);
+    }
+
+    @Benchmark
+    public int consume(Blackhole blackhole) {
+        bot.consume(update);
+        blackhole.consume(bot.calls);
+        return bot.calls;
+    }
+
+    /**
+     * HalloweenBoltApp, у якого кожен обробник лише рахує виклики
+     */
+    static class StubBot extends HalloweenBoltApp {
+        int calls;
+
+        StubBot() {
+            super("0:benchmark");
+        }
+
+        @Override public void startCommand() { calls++; }
+        @Override public void imageCommand() { calls++; }
+        @Override public void editCommand() { calls++; }
+        @Override public void mergeCommand() { calls++; }
+        @Override public void partyCommand() { calls++; }
+        @Override public void videoCommand() { calls++; }
+        @Override public void onMessage() { calls++; }
+        @Override public void onPhoto() { calls++; }
+        @Override public void imageButtonCallback() { calls++; }
+        @Override public void mergeButtonCallback() { calls++; }
+        @Override public void partyButtonCallback() { calls++; }
+        @Override public void videoButtonCallback() { calls++; }
+    }
+}
@@ -0,0 +1,72 @@
+package com.javarush.halloween;
+
+import com.google.genai.types.Candidate;
+import com.google.genai.types.Content;
+import com.google.genai.types.FinishReason;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.Part;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обробка відповіді ШІ з картинкою: PNG → JPEG (ImageTranscoder)
+ * і повний розбір заготовленої відповіді generateContent (AIService.readImageResponse).
+ * Розміри відповідають тому, що зазвичай повертає Gemini, і завеликому входу.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImagePipelineBenchmark {
+
+    @Param({"1024", "4096"})
+    public int size;
+
+    private byte[] png;
+    private ImageTranscoder transcoder;
+    private AIService aiService;
+    private GenerateContentResponse response;
+
+    @Setup
+    public void setup() {
+        png = BenchmarkData.png(size, size);
+        transcoder = new ImageTranscoder();
+        aiService = new AIService();
+
+        response = GenerateContentResponse.builder()
+                .candidates(Candidate.builder()
+                        .content(Content.fromParts(Part.fromBytes(png, "image/png")))
+                        .finishReason(new FinishReason(FinishReason.Known.STOP))
+                        .build())
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        transcoder.shutdown();
+    }
+
+    @Benchmark
+    public byte[] pngToJpeg() {
+        return transcoder.toJpeg(png, "image/png");
+    }
+
+    @Benchmark
+    public byte[] readImageResponse() {
+        return aiService.readImageResponse(response);
+    }
+}
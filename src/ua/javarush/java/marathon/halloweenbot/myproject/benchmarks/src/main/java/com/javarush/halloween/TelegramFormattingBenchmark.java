@@ -0,0 +1,54 @@
+package com.javarush.halloween;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Підготовка повідомлень: клавіатура з кнопок і перевірка Markdown
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TelegramFormattingBenchmark {
+    // Та сама панель, що й у /party
+    private static final List<String> PARTY_BUTTONS = List.of(
+            "party_image1", "🐺 Місячне затемнення (перевертень)",
+            "party_image2", "🦇 Прокляте дзеркало (вампір)",
+            "party_image3", "🔮 Відьмине коло (дим і руни)",
+            "party_image4", "🧟 Гниття часу (зомбі)",
+            "party_image5", "😈 Призов демона (демон)");
+
+    private SimpleTelegramBot bot;
+    private String mainMessage;
+
+    @Setup
+    public void setup() {
+        bot = new SimpleTelegramBot("0:benchmark");
+        mainMessage = SimpleTelegramBot.loadMessage("main");
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup buildKeyboard() {
+        return bot.buildKeyboard(PARTY_BUTTONS, "party_image3");
+    }
+
+    @Benchmark
+    public boolean isMarkdownValid() {
+        return SimpleTelegramBot.isMarkdownValid(mainMessage);
+    }
+}
@@ -0,0 +1,40 @@
+package com.javarush.halloween;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вартість loadPrompt()/loadMessage() — їх викликає майже кожна команда й кнопка
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBenchmark {
+
+    // Імена, що є і серед prompts/, і серед messages/
+    @Param({"main", "edit"})
+    public String name;
+
+    @Benchmark
+    public String loadPrompt() {
+        return SimpleTelegramBot.loadPrompt(name);
+    }
+
+    @Benchmark
+    public String loadMessage() {
+        return SimpleTelegramBot.loadMessage(name);
+    }
+}
@@ -0,0 +1,53 @@
+#!/usr/bin/env bash
+# Локальний кластер без справжнього Telegram:
+#   заглушка Bot API (TelegramStandIn) :8090, вхідний вузол :8080, робочі вузли :8081, :8082, ...
+# Кожен робочий вузол має власний DATA_DIR (сесії, журнал відео, файли користувачів).
+#
+#   ./cluster-local.sh [кількість_вузлів]
+#
+# Далі події надсилає заглушка — вона пересилає їх на webhook вхідного вузла:
+#   curl -X POST 'http://127.0.0.1:8090/updates?chat=42&text=/start'
+#   curl -X POST 'http://127.0.0.1:8090/updates?chat=42&callback=create_anime'
+#   curl 'http://127.0.0.1:8090/calls'        # що відповів бот
+# Зупинка вузла (Ctrl+C чи kill) — його чати переходять до інших; запуск — частина чатів повертається.
+set -euo pipefail
+
+cd "$(dirname "$0")"
+WORKERS=${1:-2}
+JAR=target/HaloweenBot-01-1.0-SNAPSHOT.jar
+STATE=target/cluster
+
+# Заглушка — у тестових класах, щоб не потрапляти в робочий jar; -DskipTests їх компілює, але не запускає
+[ -f "$JAR" ] && [ -d target/test-classes ] || mvn -B -q -DskipTests package
+
+export TELEGRAM_TOKEN=${TELEGRAM_TOKEN:-0:local}
+export TELEGRAM_API_URL=http://127.0.0.1:8090
+export PROJECT_ROOT="$PWD/src/main/resources"
+export CLUSTER_SECRET=local-cluster-secret
+mkdir -p "$STATE"
+
+PIDS=()
+trap 'kill "${PIDS[@]}" 2>/dev/null; wait' EXIT INT TERM
+
+STANDIN_PORT=8090 java -cp "target/test-classes:$JAR" com.javarush.halloween.TelegramStandIn > "$STATE/standin.log" 2>&1 &
+PIDS+=($!)
+
+CLUSTER_ROLE=ingress \
+WEBHOOK_URL=http://127.0.0.1:8080/telegram WEBHOOK_SECRET=local-webhook-secret \
+WEBHOOK_HOST=127.0.0.1 WEBHOOK_PORT=8080 \
+    java -jar "$JAR" > "$STATE/ingress.log" 2>&1 &
+PIDS+=($!)
+
+for i in $(seq 1 "$WORKERS"); do
+    port=$((8080 + i))
+    CLUSTER_ROLE=worker \
+    WORKER_HOST=127.0.0.1 WORKER_PORT=$port WORKER_URL=http://127.0.0.1:$port/webhook \
+    CLUSTER_INGRESS_URL=http://127.0.0.1:8080 \
+    DATA_DIR="$PWD/$STATE/worker-$i" \
+        java -jar "$JAR" > "$STATE/worker-$i.log" 2>&1 &
+    PIDS+=($!)
+done
+
+echo "Заглушка Telegram: http://127.0.0.1:8090, вхідний вузол: http://127.0.0.1:8080, вузлів: $WORKERS"
+echo "Логи: $STATE/*.log. Ctrl+C — зупинити все."
+wait
@@ -2,30 +2,55 @@ package com.javarush.halloween;
 
 import com.google.common.collect.ImmutableList;
 import com.google.genai.Client;
+import com.google.genai.ResponseStream;
 import com.google.genai.types.*;
-import io.github.cdimascio.dotenv.Dotenv;
-import net.coobird.thumbnailator.Thumbnails;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class AIService {
     // Моделі — для роботи з текстом, зображеннями й відео
-    private static final String TEXT_MODEL = "gemini-2.5-flash";
-    private static final String IMAGE_MODEL = "gemini-2.5-flash-image";
-    private static final String VIDEO_MODEL = "veo-3.0-fast-generate-001";
+    static final String TEXT_MODEL = "gemini-2.5-flash";
+    static final String IMAGE_MODEL = "gemini-2.5-flash-image";
+    static final String VIDEO_MODEL = "veo-3.0-fast-generate-001";
+
+    // Скільки запитів до кожної моделі може виконуватися одночасно
+    private static final int TEXT_CONCURRENCY = 8;
+    private static final int IMAGE_CONCURRENCY = 4;
+    private static final int VIDEO_CONCURRENCY = 2;
+
+    // Захист викликів кожної моделі: бюджет часу, повтори, дубль запиту, circuit breaker.
+    // Картинки й відео дорогі, тож їх не дублюємо й не повторюємо після тайм-ауту — інакше заплатимо двічі.
+    // Старт відео без бюджету: операцію, яку Veo таки запустить, треба дочекатися й записати в журнал.
+    private final Map<String, ModelGuard> guards = Map.of(
+            TEXT_MODEL, new ModelGuard(TEXT_MODEL, new ModelGuard.Policy(
+                    Duration.ofSeconds(30), 3, Duration.ofMillis(500), 0.95, true, 5, Duration.ofSeconds(30))),
+            IMAGE_MODEL, new ModelGuard(IMAGE_MODEL, new ModelGuard.Policy(
+                    Duration.ofSeconds(90), 2, Duration.ofSeconds(2), 0, false, 5, Duration.ofSeconds(60))),
+            VIDEO_MODEL, new ModelGuard(VIDEO_MODEL, new ModelGuard.Policy(
+                    null, 1, Duration.ofSeconds(2), 0, false, 3, Duration.ofSeconds(60)))
+    );
+
+    // Скільки чекаємо на відео від Veo (разом із часом до перезапуску бота)
+    private static final Duration VIDEO_TIMEOUT = Duration.ofMinutes(5);
 
     // Налаштування безпеки
     private static final SafetySetting[] safetySettings = new SafetySetting[]{
@@ -41,75 +66,147 @@ public class AIService {
 
     // Внутрішні дані
     private final Path root;
-    private final Client client;
+    // Клієнт Gemini створюється у фоні одразу під час старту, а перший запит лише дочікується його
+    private final AtomicReference<CompletableFuture<Client>> client = new AtomicReference<>();
+    private final AppConfig appConfig = AppConfig.get();
     private final GenerateContentConfig config;
+    private final VideoOperationPoller videoPoller;
 
-    public AIService() {
-        // Завантажуємо налаштування з файла `.env`
-        Dotenv env = Dotenv.configure().ignoreIfMissing().load();
+    // Незавершені генерації відео: після перезапуску продовжуємо їх опитувати
+    private final VideoJobJournal videoJobs;
+    private volatile boolean closing;
 
-        var options = HttpOptions.builder()
-                .baseUrl(env.get("BASE_URL"))
-                .apiVersion(env.get("API_VERSION"))
-                .build();
+    // Кеш результатів: повторний пресет на тому самому фото не йде в мережу
+    private final GenerationCache resultCache;
 
-        this.client = Client.builder()
-                .apiKey(env.get("GOOGLE_API_KEY"))
-                .httpOptions(options)
-                .build();
+    // Перетворення PNG → JPEG виконується у власному пулі, окремо від обробки подій
+    private final ImageTranscoder transcoder = new ImageTranscoder(
+            appConfig.getInt("IMAGE_MAX_SIDE", ImageTranscoder.TELEGRAM_MAX_SIDE),
+            (float) appConfig.getDouble("IMAGE_JPEG_QUALITY", ImageTranscoder.DEFAULT_QUALITY));
+
+    // Окремі виконавці для кожної моделі, щоб відео не забирало ліміт у картинок
+    private final BoundedExecutor textExecutor = new BoundedExecutor("ai-text", TEXT_CONCURRENCY);
+    private final BoundedExecutor imageExecutor = new BoundedExecutor("ai-image", IMAGE_CONCURRENCY);
+    private final BoundedExecutor videoExecutor = new BoundedExecutor("ai-video", VIDEO_CONCURRENCY);
+
+    public AIService() {
+        client.set(createClientAsync());
 
         this.config = GenerateContentConfig.builder()
                 .safetySettings(safetySettings)
                 .build();
 
+        // Один планувальник опитує всі операції генерації відео
+        this.videoPoller = new VideoOperationPoller(this::client, VIDEO_TIMEOUT);
+
         // Формуємо абсолютний шлях до папки з ресурсами
         this.root = SimpleTelegramBot.getProjectRoot();
+        // Черги до моделей теж видно в метриках
+        for (BoundedExecutor executor : List.of(textExecutor, imageExecutor, videoExecutor)) {
+            Metrics.gauge("bot_ai_active_requests", "executor", executor.getName(), executor::getActiveCount);
+            Metrics.gauge("bot_ai_queued_requests", "executor", executor.getName(), executor::getQueuedCount);
+        }
+        Path dataRoot = SimpleTelegramBot.getDataRoot();
+        this.resultCache = new GenerationCache(dataRoot.resolve("cache/generations"), 64L << 20, 1L << 30);
+        this.videoJobs = new VideoJobJournal(dataRoot.resolve("data/video_jobs.properties"));
     }
 
     /**
      * Простий текстовий запит до Google Gemini: текст --> текст
      */
     public String askForAnswer(String text) {
-        var response = client.models.generateContent(TEXT_MODEL, text, config);
+        var response = guarded(TEXT_MODEL, () -> client().models.generateContent(TEXT_MODEL, text, config));
         return response.text();
     }
 
+    /**
+     * Потокова відповідь: onPartial отримує накопичений текст щоразу, як модель надсилає новий фрагмент.
+     * Повертає повний текст. Захист той самий, що й для askForAnswer (ModelGuard.callStream):
+     * бюджет часу на перший і кожен наступний фрагмент, повтори до першого фрагмента, circuit breaker.
+     */
+    public String askForAnswerStream(String text, Consumer<String> onPartial) {
+        return guards.get(TEXT_MODEL).callStream(watch -> timed(TEXT_MODEL, () -> {
+            StringBuilder answer = new StringBuilder();
+            try (ResponseStream<GenerateContentResponse> stream = client().models.generateContentStream(TEXT_MODEL, text, config)) {
+                watch.open(stream);
+                for (GenerateContentResponse chunk : stream) {
+                    watch.progress();
+                    String part = chunk.text();
+                    if (part != null && !part.isEmpty()) {
+                        answer.append(part);
+                        onPartial.accept(answer.toString());
+                    }
+                }
+            }
+            return answer.toString();
+        }));
+    }
+
     /**
      * Генерація зображення за текстом за допомогою Google Gemini 2.5 Flash Image Preview.
+     * Повертає картинку в JPEG.
      */
+    public byte[] createImage(String prompt) {
+        var resp = guarded(IMAGE_MODEL, () -> client().models.generateContent(IMAGE_MODEL, prompt, config));
+        return readImageResponse(resp);
+    }
+
     public void createImage(String prompt, Path outputPath) {
-        var resp = client.models.generateContent(IMAGE_MODEL, prompt, config);
-        writeImageResponse(resp, outputPath);
+        writeLocalFile(outputPath, createImage(prompt));
     }
 
     /**
      * Редагування зображення: вихідна картинка + текстова інструкція.
+     * Працює з байтами в памʼяті, без проміжних файлів.
      */
-    public void editImage(Path inputPath, String prompt, Path outputPath) {
+    public byte[] editImage(byte[] input, String prompt) {
+        String cacheKey = GenerationCache.key(IMAGE_MODEL, prompt, List.of(input));
+        byte[] cached = resultCache.get(cacheKey);
+        if (cached != null)
+            return cached;
+
         Part text = Part.fromText(prompt);
-        Part image = partFromLocalFile(inputPath);
+        Part image = Part.fromBytes(input, detectMimeType(input));
         Content content = Content.fromParts(text, image);
 
-        GenerateContentResponse resp = client.models.generateContent(IMAGE_MODEL, content, config);
-        writeImageResponse(resp, outputPath);
+        GenerateContentResponse resp = guarded(IMAGE_MODEL, () -> client().models.generateContent(IMAGE_MODEL, content, config));
+        byte[] result = readImageResponse(resp);
+        resultCache.put(cacheKey, result);
+        return result;
+    }
+
+    public void editImage(Path inputPath, String prompt, Path outputPath) {
+        writeLocalFile(outputPath, editImage(readLocalFile(inputPath), prompt));
     }
 
     /**
      * Обʼєднання кількох зображень за текстовою інструкцією.
      */
-    public void mergeImages(List<Path> inputList, String prompt, Path outputPath) {
+    public byte[] mergeImages(List<byte[]> inputs, String prompt) {
+        String cacheKey = GenerationCache.key(IMAGE_MODEL, prompt, inputs);
+        byte[] cached = resultCache.get(cacheKey);
+        if (cached != null)
+            return cached;
+
         // спочатку текст-інструкція
         List<Part> parts = new ArrayList<>();
         parts.add(Part.fromText(prompt));
 
         // потім картинки
-        for (Path p : inputList) {
-            parts.add(partFromLocalFile(p));
+        for (byte[] input : inputs) {
+            parts.add(Part.fromBytes(input, detectMimeType(input)));
         }
         Content content = Content.fromParts(parts.toArray(Part[]::new));
 
-        GenerateContentResponse resp = client.models.generateContent(IMAGE_MODEL, content, config);
-        writeImageResponse(resp, outputPath);
+        GenerateContentResponse resp = guarded(IMAGE_MODEL, () -> client().models.generateContent(IMAGE_MODEL, content, config));
+        byte[] result = readImageResponse(resp);
+        resultCache.put(cacheKey, result);
+        return result;
+    }
+
+    public void mergeImages(List<Path> inputList, String prompt, Path outputPath) {
+        List<byte[]> inputs = inputList.stream().map(this::readLocalFile).toList();
+        writeLocalFile(outputPath, mergeImages(inputs, prompt));
     }
 
     /**
@@ -117,8 +214,21 @@ public class AIService {
      * Використовується модель Google Gemini Flash Veo 3. Завжди 8 секунд.
      */
     public void videoFromTextAndImage(Path inputImage, String prompt, Path outVideo) {
-        inputImage = inputImage.isAbsolute() ? inputImage : root.resolve(inputImage);
-        Image img = Image.fromFile(inputImage.toString());
+        try {
+            videoFromTextAndImageAsync(readLocalFile(inputImage), prompt, outVideo).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    /**
+     * Запускаємо тривалу операцію генерації відео (не чекаючи її завершення)
+     */
+    private GenerateVideosOperation startVideo(byte[] input, String prompt) {
+        Image img = Image.builder()
+                .imageBytes(input)
+                .mimeType(detectMimeType(input))
+                .build();
 
         // Базова конфігурація (підставте потрібні параметри — тривалість/AR тощо)
         GenerateVideosConfig cfg = GenerateVideosConfig.builder()
@@ -127,14 +237,131 @@ public class AIService {
                 .build();
 
         // Запускаємо тривалу операцію
-        GenerateVideosOperation op = client.models.generateVideos(VIDEO_MODEL, prompt, img, cfg);
-        writeVideoResponse(op, outVideo);
+        return guarded(VIDEO_MODEL, () -> client().models.generateVideos(VIDEO_MODEL, prompt, img, cfg));
+    }
+
+    /* Асинхронні варіанти: виконуються на виконавці своєї моделі й не блокують потік обробника */
+
+    public CompletableFuture<String> askForAnswerAsync(String text) {
+        return supplyAsync(TEXT_MODEL, () -> askForAnswer(text), textExecutor);
+    }
+
+    public CompletableFuture<String> askForAnswerStreamAsync(String text, Consumer<String> onPartial) {
+        return supplyAsync(TEXT_MODEL, () -> askForAnswerStream(text, onPartial), textExecutor);
+    }
+
+    public CompletableFuture<byte[]> createImageAsync(String prompt) {
+        return supplyAsync(IMAGE_MODEL, () -> createImage(prompt), imageExecutor);
+    }
+
+    public CompletableFuture<byte[]> editImageAsync(byte[] input, String prompt) {
+        return supplyAsync(IMAGE_MODEL, () -> editImage(input, prompt), imageExecutor);
+    }
+
+    public CompletableFuture<byte[]> mergeImagesAsync(List<byte[]> inputList, String prompt) {
+        // Копія списку: сесія може змінитися, поки запит чекає в черзі
+        List<byte[]> inputs = List.copyOf(inputList);
+        return supplyAsync(IMAGE_MODEL, () -> mergeImages(inputs, prompt), imageExecutor);
     }
 
     /**
-     * Розбір відповіді generateContent і збереження картинки.
+     * Потік виконавця зайнятий лише на старті операції та завантаженні файла;
+     * очікування готовності відео відбувається в спільному VideoOperationPoller.
+     * Відео лишається файлом: SDK завантажує його одразу на диск.
      */
-    private void writeImageResponse(GenerateContentResponse resp, Path outputPath) {
+    public CompletableFuture<Void> videoFromTextAndImageAsync(byte[] input, String prompt, Path outVideo) {
+        return videoFromTextAndImageAsync(null, input, prompt, outVideo);
+    }
+
+    /**
+     * Те саме, але генерація записується в журнал для чату chatId:
+     * якщо бот перезапуститься, відео все одно буде доставлене (див. resumeVideoJobs)
+     */
+    public CompletableFuture<Void> videoFromTextAndImageAsync(String chatId, byte[] input, String prompt, Path outVideo) {
+        return CompletableFuture.supplyAsync(() -> {
+            String cacheKey = GenerationCache.key(VIDEO_MODEL, prompt, List.of(input));
+            byte[] cached = resultCache.get(cacheKey);
+            if (cached == null)
+                return cacheKey;
+
+            // Готове відео вже є в кеші
+            Path absolute = outVideo.isAbsolute() ? outVideo : root.resolve(outVideo);
+            rotateExisting(absolute);
+            writeLocalFile(absolute, cached);
+            return null;
+        }, videoExecutor).thenCompose(cacheKey -> {
+            if (cacheKey == null)
+                return CompletableFuture.completedFuture(null);
+
+            return supplyAsync(VIDEO_MODEL, () -> startVideo(input, prompt), videoExecutor)
+                    .thenCompose(op -> {
+                        if (chatId == null || op.name().isEmpty())
+                            return awaitVideo(op, Duration.ZERO, cacheKey, outVideo);
+
+                        var job = new VideoJobJournal.Job(chatId, op.name().get(), outVideo.toString(),
+                                System.currentTimeMillis(), cacheKey);
+                        videoJobs.add(job);
+                        return journaled(job, awaitVideo(op, Duration.ZERO, cacheKey, outVideo));
+                    });
+        });
+    }
+
+    /**
+     * Продовжуємо генерації відео, розпочаті до перезапуску бота.
+     * Для кожної викликаємо onDone(job, null) з готовим відео в job.outputPath()
+     * або onDone(job, error), якщо операція впала чи вийшов тайм-аут.
+     */
+    public void resumeVideoJobs(BiConsumer<VideoJobJournal.Job, Throwable> onDone) {
+        for (VideoJobJournal.Job job : videoJobs.list()) {
+            var op = GenerateVideosOperation.builder().name(job.operationName()).build();
+            var elapsed = Duration.ofMillis(Math.max(0, System.currentTimeMillis() - job.startedMillis()));
+
+            journaled(job, awaitVideo(op, elapsed, job.cacheKey(), Path.of(job.outputPath())))
+                    .whenComplete((r, e) -> onDone.accept(job, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e));
+        }
+    }
+
+    private CompletableFuture<Void> awaitVideo(GenerateVideosOperation op, Duration elapsed, String cacheKey, Path outVideo) {
+        return videoPoller.await(op, elapsed)
+                .thenAcceptAsync(done -> {
+                    writeVideoResponse(done, outVideo);
+                    resultCache.put(cacheKey, readLocalFile(outVideo));
+                }, videoExecutor);
+    }
+
+    /**
+     * Завершена генерація (успішно чи з помилкою) зникає з журналу.
+     * Якщо ж бот зупиняється, запис лишається — продовжимо після старту.
+     */
+    private CompletableFuture<Void> journaled(VideoJobJournal.Job job, CompletableFuture<Void> future) {
+        return future.whenComplete((r, e) -> {
+            if (!closing)
+                videoJobs.remove(job);
+        });
+    }
+
+    /**
+     * Зупинка сервісу: короткі запити (текст, картинки) дочікуємо до timeout,
+     * а відео не чекаємо — вони лишаються в журналі й продовжаться після перезапуску
+     */
+    public void shutdown(Duration timeout) {
+        closing = true;
+        videoPoller.shutdown();
+        videoExecutor.shutdown();
+        videoJobs.flush();
+
+        textExecutor.shutdown();
+        imageExecutor.shutdown();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        textExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        imageExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        transcoder.shutdown();
+    }
+
+    /**
+     * Розбір відповіді generateContent: дістаємо картинку й повертаємо її в JPEG.
+     */
+    byte[] readImageResponse(GenerateContentResponse resp) {
         final String errorMessage = "ШІ не зміг створити картинку. Спробуйте інший промпт.";
         final String noContentMessage = "Відповідь від ШІ не містить зображення. Спробуйте інший промпт.";
         final String imageSafetyMessage = "Запит відхилено фільтрами безпеки. Спробуйте змінити опис.";
@@ -158,66 +385,48 @@ public class AIService {
                 .map(Optional::get)
                 .forEach(System.out::println);
 
-        // Шукаємо зображення й зберігаємо його
+        // Шукаємо зображення
         for (Part part : Objects.requireNonNull(resp.parts())) {
             Optional<Blob> optionalBlob = part.inlineData();
             if (optionalBlob.isPresent() && optionalBlob.get().data().isPresent()) {
                 Blob blob = optionalBlob.get();
                 String mime = blob.mimeType().orElse("image/png");
-                saveImageAsJpeg(outputPath, blob.data().get(), mime);
-                return;
+                return transcoder.toJpeg(blob.data().get(), mime);
             }
         }
         throw new RuntimeException(errorMessage);
     }
 
+    /**
+     * Розбір завершеної операції генерації відео і збереження файла.
+     */
     private void writeVideoResponse(GenerateVideosOperation op, Path outVideo) {
-        try {
-            // 1) Чекаємо завершення LRO (Long-Running Operation) із тайм-аутом
-            final long timeoutNanos = TimeUnit.MINUTES.toNanos(5);
-            final long started = System.nanoTime();
-
-            // кожні 3 секунди опитуємо стан
-            while (!op.done().orElse(false)) {
-                if (System.nanoTime() - started > timeoutNanos) {
-                    throw new RuntimeException("Очікування генерації відео перевищило 5 хвилин.");
-                }
-                TimeUnit.SECONDS.sleep(3);
-
-                // Опитуємо стан операції за допомогою getVideosOperation
-                op = client.operations.getVideosOperation(op, null);
-            }
-
-            // 2) Перевіряємо, що модель повернула відповідь і є принаймні одне відео
-            var respOpt = op.response();
-            if (respOpt.isEmpty()) {
-                throw new RuntimeException("Відео не згенеровано: порожня відповідь операції.");
-            }
-
-            var videosOpt = respOpt.get().generatedVideos();
-            if (videosOpt.isEmpty() || videosOpt.get().isEmpty()) {
-                throw new RuntimeException("Відео не згенеровано: список generatedVideos порожній.");
-            }
+        // 1) Перевіряємо, що модель повернула відповідь і є принаймні одне відео
+        var respOpt = op.response();
+        if (respOpt.isEmpty()) {
+            throw new RuntimeException("Відео не згенеровано: порожня відповідь операції.");
+        }
 
-            GeneratedVideo gen = videosOpt.get().getFirst();
-            var videoOpt = gen.video();
-            if (videoOpt.isEmpty()) {
-                throw new RuntimeException("Відео не згенеровано: обʼєкт Video відсутній.");
-            }
+        var videosOpt = respOpt.get().generatedVideos();
+        if (videosOpt.isEmpty() || videosOpt.get().isEmpty()) {
+            throw new RuntimeException("Відео не згенеровано: список generatedVideos порожній.");
+        }
 
-            // 3) Завантажуємо файл і зберігаємо на диск
-            // Підстраховка: перетворюємо шлях на абсолютний 
-            outVideo = outVideo.isAbsolute() ? outVideo : root.resolve(outVideo);
+        GeneratedVideo gen = videosOpt.get().getFirst();
+        var videoOpt = gen.video();
+        if (videoOpt.isEmpty()) {
+            throw new RuntimeException("Відео не згенеровано: обʼєкт Video відсутній.");
+        }
 
-            // Опціонально: перейменуємо наявний файл із часовою міткою
-            rotateExisting(outVideo);
+        // 2) Завантажуємо файл і зберігаємо на диск
+        // Підстраховка: перетворюємо шлях на абсолютний 
+        outVideo = outVideo.isAbsolute() ? outVideo : root.resolve(outVideo);
 
-            // Завантажити файл на диск
-            client.files.download(videoOpt.get(), outVideo.toString(), null);
+        // Опціонально: перейменуємо наявний файл із часовою міткою
+        rotateExisting(outVideo);
 
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        // Завантажити файл на диск
+        client().files.download(videoOpt.get(), outVideo.toString(), null);
     }
 
     /**
@@ -242,44 +451,92 @@ public class AIService {
     }
 
     /**
-     * Завантажуємо локальну картинку як Content Part.
-     * Потрібно для роботи з Google Gemini API
+     * Створюємо клієнт Gemini на окремому потоці, не затримуючи старт бота
      */
-    private Part partFromLocalFile(Path path) {
-        try {
-            path = path.isAbsolute() ? path : root.resolve(path);
-            String mime = Files.probeContentType(path);
-            if (mime == null) mime = "image/jpeg"; // підстраховка
-            return Part.fromBytes(Files.readAllBytes(path), mime);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private CompletableFuture<Client> createClientAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            var options = HttpOptions.builder()
+                    .baseUrl(appConfig.get("BASE_URL"))
+                    .apiVersion(appConfig.get("API_VERSION"))
+                    .build();
+
+            return Client.builder()
+                    .apiKey(appConfig.get("GOOGLE_API_KEY"))
+                    .httpOptions(options)
+                    .build();
+        }, Thread.ofVirtual().name("genai-init")::start);
+    }
+
+    /**
+     * Готовий клієнт Gemini. Якщо створити його не вдалося — пробуємо ще раз
+     */
+    private Client client() {
+        CompletableFuture<Client> current = client.get();
+        if (current.isCompletedExceptionally()) {
+            CompletableFuture<Client> retry = createClientAsync();
+            current = client.compareAndSet(current, retry) ? retry : client.get();
         }
+        return current.join();
+    }
+
+    /**
+     * Виклик моделі через її ModelGuard: бюджет часу, повтори, circuit breaker
+     */
+    private <T> T guarded(String model, Supplier<T> call) {
+        return guards.get(model).call(() -> timed(model, call));
     }
 
     /**
-     * Зберігаємо надіслану картинку як jpeg.
-     * Зазвичай картинку надсилають як image/png, тому її потрібно перетворити на image/jpeg.
+     * Поки модель недоступна, не ставимо запит у чергу виконавця — одразу відповідаємо помилкою
      */
-    private void saveImageAsJpeg(Path outputPath, byte[] bytes, String mimeType) {
+    private <T> CompletableFuture<T> supplyAsync(String model, Supplier<T> call, BoundedExecutor executor) {
+        if (guards.get(model).isOpen())
+            return CompletableFuture.failedFuture(new ModelGuard.RejectedException());
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    /**
+     * Виклик моделі з виміром тривалості (метрика bot_ai_request_duration_seconds)
+     */
+    private static <T> T timed(String model, Supplier<T> call) {
+        long started = System.nanoTime();
         try {
-            outputPath = outputPath.isAbsolute() ? outputPath : root.resolve(outputPath);
+            return call.get();
+        } finally {
+            Metrics.observe("bot_ai_request_duration_seconds", "model", model, System.nanoTime() - started);
+        }
+    }
 
-            // Якщо картинка вже в JPEG — зберігаємо як є
-            var jpegList = List.of("image/jpeg", "image/jpg");
-            if (jpegList.contains(mimeType)) {
-                Files.write(outputPath, bytes);
-                return;
-            }
+    /**
+     * Визначаємо тип картинки за сигнатурою (потрібно для Google Gemini API)
+     */
+    private static String detectMimeType(byte[] bytes) {
+        if (bytes.length > 4 && (bytes[0] & 0xFF) == 0x89 && bytes[1] == 'P' && bytes[2] == 'N' && bytes[3] == 'G')
+            return "image/png";
+        if (bytes.length > 12 && bytes[0] == 'R' && bytes[1] == 'I' && bytes[2] == 'F' && bytes[3] == 'F'
+                && bytes[8] == 'W' && bytes[9] == 'E' && bytes[10] == 'B' && bytes[11] == 'P')
+            return "image/webp";
+        return "image/jpeg"; // підстраховка
+    }
+
+    /**
+     * Читаємо локальний файл повністю
+     */
+    private byte[] readLocalFile(Path path) {
+        try {
+            path = path.isAbsolute() ? path : root.resolve(path);
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-            // Інакше — конвертуємо в JPEG одним ланцюжком Thumbnailator
-            Thumbnails.of(new ByteArrayInputStream(bytes))
-                    .scale(1.0)                          // без зміни розміру
-                    .imageType(BufferedImage.TYPE_INT_RGB) // прибираємо альфу (тло стане чорним/бібліотечним дефолтом)
-                    .outputFormat("jpg")
-                    .outputQuality(0.92f)                // якість 0..1
-                    .toFile(outputPath.toFile());
+    private void writeLocalFile(Path path, byte[] bytes) {
+        try {
+            path = path.isAbsolute() ? path : root.resolve(path);
+            Files.write(path, bytes);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+}
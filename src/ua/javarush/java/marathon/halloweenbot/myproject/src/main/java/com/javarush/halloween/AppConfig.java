@@ -0,0 +1,73 @@
+package com.javarush.halloween;
+
+import io.github.cdimascio.dotenv.Dotenv;
+import io.github.cdimascio.dotenv.DotenvEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Налаштування бота: `.env` + змінні оточення, прочитані один раз під час старту.
+ * Знімок незмінний, тож його можна вільно читати з будь-якого потоку.
+ * Змінні оточення мають пріоритет над `.env` (як і в Dotenv.get).
+ */
+public final class AppConfig {
+    private final Map<String, String> values;
+
+    private AppConfig(Map<String, String> values) {
+        this.values = Map.copyOf(values);
+    }
+
+    /**
+     * Єдиний знімок налаштувань на весь процес
+     */
+    public static AppConfig get() {
+        return Holder.INSTANCE;
+    }
+
+    private static class Holder {
+        private static final AppConfig INSTANCE = load();
+    }
+
+    private static AppConfig load() {
+        Map<String, String> values = new HashMap<>();
+        Dotenv env = Dotenv.configure().ignoreIfMissing().load();
+        for (DotenvEntry entry : env.entries(Dotenv.Filter.DECLARED_IN_ENV_FILE))
+            values.put(entry.getKey(), entry.getValue());
+        values.putAll(System.getenv());
+        return new AppConfig(values);
+    }
+
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    public String get(String key, String defaultValue) {
+        String value = values.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Чи задано непорожнє значення
+     */
+    public boolean has(String key) {
+        String value = values.get(key);
+        return value != null && !value.isBlank();
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return has(key) ? Integer.parseInt(values.get(key).trim()) : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return has(key) ? Long.parseLong(values.get(key).trim()) : defaultValue;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        return has(key) ? Double.parseDouble(values.get(key).trim()) : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return has(key) ? Boolean.parseBoolean(values.get(key).trim()) : defaultValue;
+    }
+}
@@ -0,0 +1,105 @@
+package com.javarush.halloween;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Виконавець з обмеженням кількості одночасних задач.
+ * Кожна задача отримує віртуальний потік, але стартує лише тоді,
+ * коли звільняється один із limit дозволів — решта чекає в черзі.
+ */
+public class BoundedExecutor implements Executor {
+    private final String name;
+    private final int limit;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+
+    // Виклики, які задача лишила виконуватися після себе (тайм-аут, дубль запиту)
+    private static final ThreadLocal<List<CompletableFuture<?>>> leftovers = new ThreadLocal<>();
+
+    public BoundedExecutor(String name, int limit) {
+        this.name = name;
+        this.limit = limit;
+        this.permits = new Semaphore(limit, true);
+
+        ThreadFactory factory = Thread.ofVirtual().name(name + "-", 0).factory();
+        this.executor = Executors.newThreadPerTaskExecutor(factory);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            List<CompletableFuture<?>> left = new ArrayList<>();
+            leftovers.set(left);
+            try {
+                task.run();
+            } finally {
+                leftovers.remove();
+                // Дозвіл звільняємо, лише коли завершилась уся робота задачі, зокрема покинуті нею виклики
+                if (left.isEmpty())
+                    permits.release();
+                else
+                    CompletableFuture.allOf(left.toArray(CompletableFuture[]::new)).whenComplete((r, e) -> permits.release());
+            }
+        });
+    }
+
+    /**
+     * Задача завершується, а future ще виконується (наприклад, запит до моделі після тайм-ауту):
+     * дозвіл задачі лишається зайнятим, доки future не завершиться.
+     * Поза задачею BoundedExecutor нічого не робить.
+     */
+    public static void holdPermitUntil(CompletableFuture<?> future) {
+        List<CompletableFuture<?>> left = leftovers.get();
+        if (left != null && !future.isDone())
+            left.add(future);
+    }
+
+    /**
+     * Скільки задач виконується просто зараз
+     */
+    public int getActiveCount() {
+        return limit - permits.availablePermits();
+    }
+
+    /**
+     * Скільки задач чекає на вільний дозвіл
+     */
+    public int getQueuedCount() {
+        return permits.getQueueLength();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Чекаємо, доки виконаються вже прийняті задачі (після shutdown)
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        try {
+            return executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.javarush.halloween;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Вхідний вузол кластера: приймає webhook від Telegram і пересилає кожну подію одному з робочих вузлів.
+ * - вузол обирається консистентним хешуванням за chat id, тож чат завжди потрапляє на «свій» вузол
+ *   (там його сесія), а приєднання чи вихід вузла переносить лише ~1/N чатів;
+ * - події одного чату пересилаються строго по черзі (наступна — після підтвердження попередньої);
+ * - робочі вузли приєднуються й підтверджують, що живі, через POST /cluster/join (див. ClusterMember),
+ *   виходять через POST /cluster/leave; вузол без heartbeat довше за WORKER_TTL_SECONDS вибуває.
+ *
+ * Перевірити локально: cluster-local.sh запускає заглушку Telegram (TelegramStandIn), вхідний вузол
+ * і кілька робочих JVM, кожну зі своїм DATA_DIR; події надсилаються через заглушку.
+ */
+public class ClusterIngress {
+    private static final Logger log = LoggerFactory.getLogger(ClusterIngress.class);
+    static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    static final long HEARTBEAT_SECONDS = 5;
+    private static final long WORKER_TTL_SECONDS = 3 * HEARTBEAT_SECONDS;
+    private static final int VIRTUAL_NODES = 128;
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final int MAX_FORWARD_ATTEMPTS = 3;
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final HttpServer server;
+    private final OkHttpClient httpClient;
+    private final byte[] telegramSecret;
+    private final byte[] clusterSecret;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final ConsistentHashRing<String> ring = new ConsistentHashRing<>(VIRTUAL_NODES);
+    private final Map<String, Long> lastHeartbeat = new ConcurrentHashMap<>();
+    // Пересилання одного чату — по черзі, різних чатів — паралельно
+    private final KeyedOrderedExecutor forwarder = new KeyedOrderedExecutor();
+    private final ScheduledExecutorService reaper;
+
+    public ClusterIngress(OkHttpClient httpClient, String host, int port, String webhookPath,
+                          String telegramSecret, String clusterSecret) {
+        if (telegramSecret == null || telegramSecret.isBlank() || clusterSecret == null || clusterSecret.isBlank())
+            throw new RuntimeException("Для кластера потрібні WEBHOOK_SECRET і CLUSTER_SECRET");
+
+        this.httpClient = httpClient;
+        this.telegramSecret = telegramSecret.getBytes(StandardCharsets.UTF_8);
+        this.clusterSecret = clusterSecret.getBytes(StandardCharsets.UTF_8);
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException("Не вдалося запустити вхідний вузол на " + host + ":" + port, e);
+        }
+
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext(webhookPath, this::handleUpdate);
+        server.createContext("/cluster/join", exchange -> handleMembership(exchange, true));
+        server.createContext("/cluster/leave", exchange -> handleMembership(exchange, false));
+
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleWithFixedDelay(this::removeDeadWorkers, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+
+        Metrics.gauge("bot_cluster_workers", ring::size);
+        Metrics.gauge("bot_cluster_forward_queue_depth", forwarder::getPendingCount);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Вхідний вузол слухає на {}:{}", server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        reaper.shutdownNow();
+        forwarder.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    private void handleUpdate(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!checkSecret(exchange, telegramSecret)) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+
+            // Некоректну подію Telegram повторював би на будь-яку відповідь, крім 2xx, — рахуємо й підтверджуємо
+            byte[] body = readBody(exchange);
+            if (body == null) {
+                log.warn("Подія завелика: понад {} байт", MAX_BODY_BYTES);
+                Metrics.increment("bot_cluster_forwarded_total", "status", "rejected");
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            Object chatKey;
+            try {
+                chatKey = getChatKey(mapper.readTree(body));
+            } catch (IOException e) {
+                log.warn("Не вдалося розібрати подію", e);
+                Metrics.increment("bot_cluster_forwarded_total", "status", "rejected");
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            // Telegram підтверджуємо одразу, пересилання йде в черзі чату
+            exchange.sendResponseHeaders(200, -1);
+            forwarder.submit(chatKey, () -> forward(chatKey, body));
+        }
+    }
+
+    /**
+     * Той самий ключ, що й SimpleTelegramBot.getChatKey: id автора повідомлення чи натискання кнопки
+     */
+    private static Object getChatKey(JsonNode update) {
+        for (String field : new String[]{"message", "callback_query"}) {
+            JsonNode id = update.path(field).path("from").path("id");
+            if (id.isNumber())
+                return id.asLong();
+        }
+        return null;
+    }
+
+    /**
+     * Пересилаємо подію власнику чату; якщо він недоступний чи зламався (мережа, 5xx) —
+     * виключаємо його й пробуємо нового власника. 4xx означає, що погана сама подія: її відкидаємо,
+     * а вузол лишається в кластері.
+     */
+    private void forward(Object chatKey, byte[] body) {
+        Object hashKey = chatKey != null ? chatKey : System.nanoTime();
+        for (int attempt = 1; attempt <= MAX_FORWARD_ATTEMPTS; attempt++) {
+            String worker = ring.get(hashKey);
+            if (worker == null) {
+                log.warn("Немає жодного робочого вузла — подію чату {} відкинуто", chatKey);
+                Metrics.increment("bot_cluster_forwarded_total", "status", "dropped");
+                return;
+            }
+
+            Request request = new Request.Builder()
+                    .url(worker)
+                    .header(SECRET_HEADER, new String(clusterSecret, StandardCharsets.UTF_8))
+                    .post(RequestBody.create(body, JSON))
+                    .build();
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (response.isSuccessful()) {
+                    Metrics.increment("bot_cluster_forwarded_total", "status", "ok");
+                    return;
+                }
+                if (response.code() < 500) {
+                    log.warn("Вузол {} відхилив подію чату {}: {}", worker, chatKey, response.code());
+                    Metrics.increment("bot_cluster_forwarded_total", "status", "rejected");
+                    return;
+                }
+                log.warn("Вузол {} відповів {}", worker, response.code());
+            } catch (IOException e) {
+                log.warn("Вузол {} недоступний: {}", worker, e.getMessage());
+            }
+
+            // Вузол не прийняв подію — до наступного heartbeat його чати обслуговують інші
+            if (ring.remove(worker))
+                log.info("Вузол {} виключено з кластера (не відповідає)", worker);
+            Metrics.increment("bot_cluster_forwarded_total", "status", "retry");
+        }
+        Metrics.increment("bot_cluster_forwarded_total", "status", "dropped");
+    }
+
+    private void handleMembership(HttpExchange exchange, boolean join) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!checkSecret(exchange, clusterSecret)) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+
+            byte[] body = readBody(exchange);
+            String worker = body != null ? new String(body, StandardCharsets.UTF_8).trim() : "";
+            if (worker.isEmpty()) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            if (join) {
+                lastHeartbeat.put(worker, System.currentTimeMillis());
+                if (ring.add(worker))
+                    log.info("Вузол {} приєднався до кластера ({} вузлів)", worker, ring.size());
+            } else {
+                lastHeartbeat.remove(worker);
+                if (ring.remove(worker))
+                    log.info("Вузол {} вийшов з кластера ({} вузлів)", worker, ring.size());
+            }
+            exchange.sendResponseHeaders(204, -1);
+        }
+    }
+
+    private void removeDeadWorkers() {
+        long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(WORKER_TTL_SECONDS);
+        lastHeartbeat.forEach((worker, seen) -> {
+            if (seen < deadline && lastHeartbeat.remove(worker, seen) && ring.remove(worker))
+                log.info("Вузол {} виключено з кластера: немає heartbeat", worker);
+        });
+    }
+
+    private static boolean checkSecret(HttpExchange exchange, byte[] secret) {
+        String header = exchange.getRequestHeaders().getFirst(SECRET_HEADER);
+        return header != null && MessageDigest.isEqual(secret, header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            return body.length > MAX_BODY_BYTES ? null : body;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.javarush.halloween;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Робочий вузол кластера: повідомляє вхідний вузол (ClusterIngress), що він живий.
+ * Heartbeat ідемпотентний — той самий запит і приєднує вузол, і підтверджує, що він досі працює.
+ * Під час плавної зупинки вузол сам виходить з кластера, і його чати одразу переходять до інших.
+ */
+public class ClusterMember {
+    private static final Logger log = LoggerFactory.getLogger(ClusterMember.class);
+    private static final MediaType TEXT = MediaType.get("text/plain; charset=utf-8");
+
+    private final OkHttpClient httpClient;
+    private final String ingressUrl;
+    private final String workerUrl;
+    private final String secret;
+    private final ScheduledExecutorService heartbeat;
+
+    public ClusterMember(OkHttpClient httpClient, String ingressUrl, String workerUrl, String secret) {
+        this.httpClient = httpClient;
+        this.ingressUrl = ingressUrl.replaceAll("/+$", "");
+        this.workerUrl = workerUrl;
+        this.secret = secret;
+
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        heartbeat.scheduleWithFixedDelay(() -> post("/cluster/join"), 0, ClusterIngress.HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        log.info("Вузол {} приєднується до кластера {}", workerUrl, ingressUrl);
+    }
+
+    /**
+     * Виходимо з кластера: нові події наших чатів підуть іншим вузлам
+     */
+    public void leave() {
+        heartbeat.shutdownNow();
+        post("/cluster/leave");
+    }
+
+    private void post(String path) {
+        Request request = new Request.Builder()
+                .url(ingressUrl + path)
+                .header(ClusterIngress.SECRET_HEADER, secret)
+                .post(RequestBody.create(workerUrl, TEXT))
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful())
+                log.warn("Вхідний вузол відповів {} на {}", response.code(), path);
+        } catch (IOException e) {
+            log.warn("Вхідний вузол {} недоступний: {}", ingressUrl, e.getMessage());
+        }
+    }
+}
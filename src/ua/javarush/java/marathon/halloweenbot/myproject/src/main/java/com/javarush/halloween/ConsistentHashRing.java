@@ -0,0 +1,87 @@
+package com.javarush.halloween;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кільце консистентного хешування.
+ * Кожен вузол займає на кільці virtualNodes точок, ключ належить першому вузлу за годинниковою стрілкою.
+ * Коли вузол додають або прибирають, на інший вузол переходить лише ~1/N ключів.
+ */
+public class ConsistentHashRing<T> {
+    private final int virtualNodes;
+    private final Set<T> nodes = ConcurrentHashMap.newKeySet();
+    // Кільце змінюється рідко (приєднання/вихід вузла), а читається на кожну подію — підміняємо копію
+    private volatile TreeMap<Long, T> ring = new TreeMap<>();
+
+    public ConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * Додати вузол; повертає false, якщо він уже є
+     */
+    public synchronized boolean add(T node) {
+        if (!nodes.add(node))
+            return false;
+
+        TreeMap<Long, T> copy = new TreeMap<>(ring);
+        for (int i = 0; i < virtualNodes; i++)
+            copy.put(hash(node + "#" + i), node);
+        ring = copy;
+        return true;
+    }
+
+    /**
+     * Прибрати вузол; повертає false, якщо його не було
+     */
+    public synchronized boolean remove(T node) {
+        if (!nodes.remove(node))
+            return false;
+
+        TreeMap<Long, T> copy = new TreeMap<>(ring);
+        copy.values().removeIf(node::equals);
+        ring = copy;
+        return true;
+    }
+
+    /**
+     * Вузол, якому належить ключ (або null, якщо кільце порожнє)
+     */
+    public T get(Object key) {
+        TreeMap<Long, T> current = ring;
+        if (current.isEmpty())
+            return null;
+
+        Map.Entry<Long, T> entry = current.ceilingEntry(hash(String.valueOf(key)));
+        return entry != null ? entry.getValue() : current.firstEntry().getValue();
+    }
+
+    public Set<T> getNodes() {
+        return Set.copyOf(nodes);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Перші 8 байтів MD5: рівномірно розподілені, однакові в усіх JVM (на відміну від hashCode)
+     */
+    static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++)
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
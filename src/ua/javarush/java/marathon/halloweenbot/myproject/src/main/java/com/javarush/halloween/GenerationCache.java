@@ -0,0 +1,174 @@
+package com.javarush.halloween;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Кеш результатів генерації за вмістом запиту: (модель, prompt, вхідні картинки).
+ * Два рівні:
+ * - у памʼяті — LRU з обмеженням за сумарним розміром;
+ * - на диску — папка з файлами, найстаріші за доступом видаляються при перевищенні ліміту.
+ * Повторне натискання того самого пресету на тому самому фото не йде в мережу.
+ */
+public class GenerationCache {
+    private static final Logger log = LoggerFactory.getLogger(GenerationCache.class);
+
+    private final Path dir;
+    private final long memoryLimitBytes;
+    private final long diskLimitBytes;
+
+    // LinkedHashMap з accessOrder=true — найдавніше використаний елемент перший
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes = 0;
+    private final AtomicLong diskBytes = new AtomicLong(-1);
+
+    public GenerationCache(Path dir, long memoryLimitBytes, long diskLimitBytes) {
+        this.dir = dir;
+        this.memoryLimitBytes = memoryLimitBytes;
+        this.diskLimitBytes = diskLimitBytes;
+    }
+
+    /**
+     * Ключ кешу: SHA-256 від моделі, prompt і вмісту всіх вхідних картинок
+     */
+    public static String key(String model, String prompt, List<byte[]> inputs) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            for (byte[] input : inputs) {
+                digest.update((byte) 0);
+                digest.update(input);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Результат із кешу або null
+     */
+    public byte[] get(String key) {
+        synchronized (memory) {
+            byte[] bytes = memory.get(key);
+            if (bytes != null)
+                return bytes;
+        }
+
+        Path file = dir.resolve(key);
+        try {
+            if (!Files.exists(file))
+                return null;
+
+            byte[] bytes = Files.readAllBytes(file);
+            // Оновлюємо час доступу — для LRU-витіснення на диску
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            putInMemory(key, bytes);
+            return bytes;
+        } catch (IOException e) {
+            log.warn("Не вдалося прочитати кеш {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Зберігаємо результат в обидва рівні кешу
+     */
+    public void put(String key, byte[] bytes) {
+        putInMemory(key, bytes);
+
+        try {
+            Files.createDirectories(dir);
+            Path file = dir.resolve(key);
+            Path tmp = dir.resolve(key + ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            if (diskBytes.get() < 0)
+                diskBytes.set(scanDiskSize());
+            if (diskBytes.addAndGet(bytes.length) > diskLimitBytes)
+                evictDisk();
+        } catch (IOException e) {
+            log.warn("Не вдалося записати кеш {}", key, e);
+        }
+    }
+
+    private void putInMemory(String key, byte[] bytes) {
+        // Завеликі результати (відео) тримаємо лише на диску
+        if (bytes.length > memoryLimitBytes / 4)
+            return;
+
+        synchronized (memory) {
+            byte[] old = memory.put(key, bytes);
+            memoryBytes += bytes.length - (old != null ? old.length : 0);
+
+            var iterator = memory.entrySet().iterator();
+            while (memoryBytes > memoryLimitBytes && iterator.hasNext()) {
+                Map.Entry<String, byte[]> eldest = iterator.next();
+                memoryBytes -= eldest.getValue().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Видаляємо найдавніше використані файли, доки не влізли в ліміт
+     */
+    private synchronized void evictDisk() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(dir)) {
+            files = stream.filter(Files::isRegularFile)
+                    .sorted(Comparator.comparingLong(GenerationCache::lastModified))
+                    .toList();
+        }
+
+        long total = files.stream().mapToLong(GenerationCache::size).sum();
+        for (Path file : files) {
+            if (total <= diskLimitBytes)
+                break;
+            total -= size(file);
+            Files.deleteIfExists(file);
+        }
+        diskBytes.set(total);
+    }
+
+    private long scanDiskSize() throws IOException {
+        try (Stream<Path> stream = Files.list(dir)) {
+            return stream.filter(Files::isRegularFile).mapToLong(GenerationCache::size).sum();
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.javarush.halloween;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обмеження частоти запитів до моделей Gemini/Veo.
+ * Для кожної моделі — окремий кошик на кожен чат і один спільний (глобальний).
+ * Вартість запиту залежить від моделі: відео «дорожче» за картинку, картинка — за текст.
+ */
+public class GenerationRateLimiter {
+    // Повні кошики (чат давно нічого не просив) прибираємо у фоні, щоб мапа не росла
+    private static final long CLEANUP_PERIOD_SECONDS = 60;
+
+    /**
+     * Ліміти однієї моделі: вартість запиту та параметри кошиків
+     */
+    public record Limit(double cost,
+                        double chatCapacity, double chatRefillPerSecond,
+                        double globalCapacity, double globalRefillPerSecond) {
+    }
+
+    /**
+     * Результат перевірки: дозволено чи ні, і скільки чекати
+     */
+    public record Decision(boolean allowed, boolean global, long retryAfterSeconds) {
+        static final Decision ALLOWED = new Decision(true, false, 0);
+    }
+
+    private final Map<String, Limit> limits;
+    private final Map<String, TokenBucket> globalBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> chatBuckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService cleaner;
+
+    public GenerationRateLimiter(Map<String, Limit> limits) {
+        this.limits = Map.copyOf(limits);
+        limits.forEach((model, limit) ->
+                globalBuckets.put(model, new TokenBucket(limit.globalCapacity(), limit.globalRefillPerSecond())));
+
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rate-limit-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(() -> chatBuckets.values().removeIf(TokenBucket::isFull),
+                CLEANUP_PERIOD_SECONDS, CLEANUP_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Ліміти за замовчуванням для моделей AIService
+     */
+    public static GenerationRateLimiter withDefaults() {
+        return new GenerationRateLimiter(Map.of(
+                // текст: 1 токен; чат — 5 запитів поспіль, далі 1 на 3 с
+                AIService.TEXT_MODEL, new Limit(1, 5, 1.0 / 3, 60, 2),
+                // картинка: 5 токенів; чат — 3 картинки поспіль, далі 1 на 20 с
+                AIService.IMAGE_MODEL, new Limit(5, 15, 5.0 / 20, 100, 2.5),
+                // відео: 40 токенів; чат — 1 відео на 2 хв
+                AIService.VIDEO_MODEL, new Limit(40, 40, 40.0 / 120, 200, 2)
+        ));
+    }
+
+    /**
+     * Пробуємо витратити ліміт чату chatId на запит до моделі model
+     */
+    public Decision tryAcquire(String chatId, String model) {
+        Limit limit = limits.get(model);
+        if (limit == null)
+            return Decision.ALLOWED;
+
+        TokenBucket chatBucket = chatBuckets.computeIfAbsent(chatId + "|" + model,
+                k -> new TokenBucket(limit.chatCapacity(), limit.chatRefillPerSecond()));
+
+        long chatWait = chatBucket.tryConsume(limit.cost());
+        if (chatWait > 0) {
+            Metrics.increment("bot_rate_limited_total", "model", model);
+            return new Decision(false, false, toSeconds(chatWait));
+        }
+
+        long globalWait = globalBuckets.get(model).tryConsume(limit.cost());
+        if (globalWait > 0) {
+            // Запит не піде — повертаємо токени чату
+            chatBucket.refund(limit.cost());
+            Metrics.increment("bot_rate_limited_total", "model", model);
+            return new Decision(false, true, toSeconds(globalWait));
+        }
+
+        return Decision.ALLOWED;
+    }
+
+    /**
+     * Повертаємо ліміт, витрачений tryAcquire, якщо запит так і не дійшов до моделі
+     */
+    public void refund(String chatId, String model) {
+        Limit limit = limits.get(model);
+        if (limit == null)
+            return;
+
+        // Кошика чату може вже не бути: його прибирають лише повним, тож повертати нікуди
+        TokenBucket chatBucket = chatBuckets.get(chatId + "|" + model);
+        if (chatBucket != null)
+            chatBucket.refund(limit.cost());
+        globalBuckets.get(model).refund(limit.cost());
+        Metrics.increment("bot_rate_limit_refunds_total", "model", model);
+    }
+
+    private static long toSeconds(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos + 999_999_999L));
+    }
+}
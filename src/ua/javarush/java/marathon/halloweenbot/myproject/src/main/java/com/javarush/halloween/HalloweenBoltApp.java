@@ -1,30 +1,232 @@
 package com.javarush.halloween;
 
-import io.github.cdimascio.dotenv.Dotenv;
+import okhttp3.OkHttpClient;
 import org.telegram.telegrambots.longpolling.TelegramBotsLongPollingApplication;
+import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.api.objects.photo.PhotoSize;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 public class HalloweenBoltApp extends SimpleTelegramBot {
 
     private AIService aiService = new AIService();
 
-    private AppMode mode;
+    // Стан кожного чату зберігається окремо й переживає перезапуск завдяки журналу
+    private final SessionJournal sessionJournal = new SessionJournal(dataRoot.resolve("data"), dataRoot.resolve("users"));
+    private final SessionStore sessions;
 
-    private String imageType = "create_anime";
-    private ArrayList<Path> imageList = new ArrayList<>();
+    // Картинки живуть у памʼяті сесії, а папка users/ — лише відкладена копія на диску
+    private final WriteBehindWriter fileWriter = new WriteBehindWriter();
+    private final boolean persistUserFiles;
+    // Відповідати ШІ на довільний текст у головному режимі
+    private final boolean chatAnswers;
+
+    // Квоти на папку users/: загальна, на користувача, і скільки старих копій файла тримати
+    private final UserStorageSweeper storageSweeper;
+
+    // Ліміти запитів до моделей: на кожен чат і на весь бот
+    private final GenerationRateLimiter rateLimiter = GenerationRateLimiter.withDefaults();
+
+    // Генерації, що виконуються зараз: повторне натискання тієї ж кнопки не запускає нову
+    private final SingleFlight<String, byte[]> imageFlights = new SingleFlight<>();
+    private final SingleFlight<String, Void> videoFlights = new SingleFlight<>();
+
+    // Команди головного меню: пари ("/command", "опис")
+    private static final String[] MAIN_MENU = {
+            "/start", "🧟‍♂️ Головне меню бота",
+            "/image", "⚰️ Створюємо зображення",
+            "/edit", "🧙‍♂️ Змінюємо зображення",
+            "/merge", "🕷️ Об'єднуємо зображення",
+            "/party", "🎃 Фото для Halloween-вечірки",
+            "/video", "🎬☠️ Моторошне Halloween-відео з фото"
+    };
 
     public HalloweenBoltApp(String token) {
         super(token);
+
+        AppConfig config = AppConfig.get();
+        this.persistUserFiles = config.getBoolean("PERSIST_USER_FILES", true);
+        this.sessions = new SessionStore(sessionJournal, persistUserFiles).start();
+        this.chatAnswers = config.getBoolean("CHAT_ANSWERS", false);
+        this.storageSweeper = new UserStorageSweeper(dataRoot.resolve("users"),
+                config.getLong("USERS_QUOTA_MB", 2048) << 20,
+                config.getLong("USER_QUOTA_MB", 100) << 20,
+                config.getInt("USER_FILE_VERSIONS", 3)).start();
+
+        // Шаблони читаємо заздалегідь, щоб перший користувач не чекав на диск
+        getTemplates();
+    }
+
+    /**
+     * Відео, які генерувалися під час перезапуску, доставляємо, щойно вони будуть готові.
+     * Викликається з main, коли бот уже приймає події, — а не в конструкторі,
+     * щоб тренувальні й тестові екземпляри не підхоплювали справжні операції з журналу.
+     */
+    public void resumeVideoJobs() {
+        aiService.resumeVideoJobs(this::deliverResumedVideo);
+    }
+
+    /**
+     * Завершилась генерація відео, розпочата до перезапуску бота
+     */
+    private void deliverResumedVideo(VideoJobJournal.Job job, Throwable error) {
+        long chatId = Long.parseLong(job.chatId());
+        if (error != null) {
+            sendTextMessage(chatId, "😢 Не вдалося завершити відео, розпочате до перезапуску бота: " + error.getMessage());
+            return;
+        }
+
+        storageSweeper.markDirty(job.chatId());
+        sendVideoMessage(chatId, Path.of(job.outputPath()));
+    }
+
+    /**
+     * Плавна зупинка: дочікуємося коротких генерацій і відповідей,
+     * відео лишаємо в журналі, а стан і файли користувачів дописуємо на диск
+     */
+    @Override
+    public void shutdown() {
+        aiService.shutdown(Duration.ofSeconds(20));
+        super.shutdown();
+        fileWriter.close();
+        sessionJournal.close();
+        storageSweeper.shutdown();
+    }
+
+    /**
+     * Сесія поточного чату
+     */
+    private UserSession session() {
+        String chatId = getCurrentChatId();
+        storageSweeper.touch(chatId);
+        return sessions.get(chatId);
+    }
+
+    /**
+     * Файл поточного користувача в папці users/
+     */
+    private Path userFile(String name) {
+        return dataRoot.resolve("users/" + getCurrentChatId() + "/" + name);
+    }
+
+    /**
+     * Відкладено зберігаємо картинку користувача на диск (якщо це увімкнено)
+     */
+    private void persistUserFile(String name, byte[] bytes) {
+        if (persistUserFiles) {
+            fileWriter.write(userFile(name), bytes);
+            storageSweeper.markDirty(getCurrentChatId());
+        }
+    }
+
+    /**
+     * Робоче фото поточного користувача: з памʼяті, а якщо його там уже немає — з диска
+     */
+    private byte[] loadWorkingPhoto() {
+        UserSession session = session();
+        if (session.getPhoto() == null) {
+            Path photoPath = userFile("photo.jpg");
+            byte[] pending = fileWriter.getPending(photoPath);
+            try {
+                if (pending != null)
+                    session.setPhoto(pending);
+                else if (Files.exists(photoPath))
+                    session.setPhoto(Files.readAllBytes(photoPath));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return session.getPhoto();
+    }
+
+    private void setWorkingPhoto(byte[] photo) {
+        session().setPhoto(photo);
+        persistUserFile("photo.jpg", photo);
+    }
+
+    /**
+     * Перевіряємо ліміт запитів до моделі. Якщо його вичерпано — одразу відповідаємо користувачу
+     */
+    private boolean checkRateLimit(String model) {
+        var decision = rateLimiter.tryAcquire(getCurrentChatId(), model);
+        if (decision.allowed())
+            return true;
+
+        if (decision.global())
+            sendTextMessage("🕯️ Зараз до бота забагато запитів. Спробуйте через " + decision.retryAfterSeconds() + " с.");
+        else
+            sendTextMessage("⏳ Зачекайте " + decision.retryAfterSeconds() + " с перед наступною генерацією.");
+        return false;
+    }
+
+    /**
+     * Ліміт повертаємо, якщо генерація так і не дійшла до моделі або нічого не дала:
+     * breaker відкритий, запит відхилено фільтрами чи він невалідний.
+     * Тимчасові збої (мережа, 5xx, тайм-аут) модель навантажили — їх ліміт не повертає.
+     */
+    private <T> CompletableFuture<T> refundIfRejected(String model, CompletableFuture<T> future) {
+        String chatId = getCurrentChatId();
+        return future.whenComplete((result, error) -> {
+            if (error != null && (error instanceof ModelGuard.RejectedException
+                    || error.getCause() instanceof ModelGuard.RejectedException || !ModelGuard.isTransient(error)))
+                rateLimiter.refund(chatId, model);
+        });
+    }
+
+    /**
+     * Запускаємо генерацію через flights. Якщо між перевіркою alreadyRunning і запуском
+     * таку саму генерацію встиг почати інший запит, ми до неї приєднались — ліміт повертаємо.
+     */
+    private <V> CompletableFuture<V> startFlight(SingleFlight<String, V> flights, String key, String model,
+                                                 Supplier<CompletableFuture<V>> task) {
+        AtomicBoolean started = new AtomicBoolean();
+        CompletableFuture<V> future = flights.execute(key, () -> {
+            started.set(true);
+            return refundIfRejected(model, task.get());
+        });
+        if (!started.get())
+            rateLimiter.refund(getCurrentChatId(), model);
+        return future;
+    }
+
+    /**
+     * Ключ генерації: чат + дія (кнопка) + вхідні картинки
+     */
+    private String flightKey(String action, List<byte[]> inputs) {
+        StringBuilder key = new StringBuilder(getCurrentChatId()).append('|').append(action);
+        for (byte[] input : inputs)
+            key.append('|').append(input.length).append(':').append(Arrays.hashCode(input));
+        return key.toString();
+    }
+
+    /**
+     * Така сама генерація вже виконується — просимо зачекати на її результат
+     */
+    private boolean alreadyRunning(SingleFlight<String, ?> flights, String key) {
+        return alreadyRunning(flights, key, "⌛ Вже працюємо над цим запитом — результат надійде сюди.");
+    }
+
+    private boolean alreadyRunning(SingleFlight<String, ?> flights, String key, String message) {
+        if (!flights.isRunning(key))
+            return false;
+        sendTextMessage(message);
+        return true;
     }
 
     public void startCommand() {
-        mode = AppMode.MAIN;
+        session().setMode(AppMode.MAIN);
 
         // Отримали ідентифікатор користувача
         String currentChatId = getCurrentChatId();
@@ -32,15 +234,8 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
         // Створили папку користувача
         createUserDir(currentChatId);
 
-        hideMainMenu();
-
-        showMainMenu("/start", "🧟‍♂️ Головне меню бота",
-                "/image", "⚰️ Створюємо зображення",
-                "/edit", "🧙‍♂️ Змінюємо зображення",
-                "/merge", "🕷️ Об'єднуємо зображення",
-                "/party", "🎃 Фото для Halloween-вечірки",
-                "/video", "🎬☠️ Моторошне Halloween-відео з фото"
-        );
+        // Меню змінюється лише тоді, коли воно в чаті інше, ніж MAIN_MENU
+        showMainMenu(MAIN_MENU);
 
 
         sendPhotoMessage("main");
@@ -49,10 +244,11 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
     }
 
     public void imageCommand() {
-        mode = AppMode.CREATE;
+        UserSession session = session();
+        session.setMode(AppMode.CREATE);
 
         sendPhotoMessage("create");
-        sendTextButtonsCheckMessage(loadMessage("create"), imageType,
+        sendTextButtonsCheckMessage(loadMessage("create"), session.getImageType(),
                 "create_anime", "👧 Аніме",
                 "create_photo", "📸 Фото"
         );
@@ -60,15 +256,17 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
 
     public void imageMessage() {
         String text = getMessageText();
-        String userId = getCurrentChatId();
-        Path photopath = Path.of("users/" + userId + "/photo.jpg");
-        String prompt = loadPrompt(imageType);
-        aiService.createImage(prompt + text, photopath);
-        sendPhotoMessage(photopath);
+        String prompt = loadPrompt(session().getImageType());
+        if (!checkRateLimit(AIService.IMAGE_MODEL))
+            return;
+        onComplete(refundIfRejected(AIService.IMAGE_MODEL, aiService.createImageAsync(prompt + text)), photo -> {
+            setWorkingPhoto(photo);
+            sendPhotoMessage(photo);
+        });
     }
 
     public void editCommand() {
-        mode = AppMode.EDIT;
+        session().setMode(AppMode.EDIT);
         sendPhotoMessage("edit");
         sendTextMessage(loadMessage("edit"));
 
@@ -76,33 +274,34 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
 
     public void editMessage() {
         String text = getMessageText();
-        String userId = getCurrentChatId();
-        Path photoPath = Path.of("users/" + userId + "/photo.jpg");
-        if(!Files.exists(root.resolve(photoPath))) {
+        byte[] photo = loadWorkingPhoto();
+        if(photo == null) {
             sendTextMessage("Спочатку завантажте або створіть зображення");
             return;
         }
 
         String prompt = loadPrompt("edit");
-        aiService.editImage(photoPath, prompt + text, photoPath);
-        sendPhotoMessage(photoPath);
+        if (!checkRateLimit(AIService.IMAGE_MODEL))
+            return;
+        onComplete(refundIfRejected(AIService.IMAGE_MODEL, aiService.editImageAsync(photo, prompt + text)), result -> {
+            setWorkingPhoto(result);
+            sendPhotoMessage(result);
+        });
 
     }
 
     public void savePhoto(){
         var photo = getMessagePhotoList().getLast();
-        var fileId = photo.getFileId();
 
-        String userId = getCurrentChatId();
-        Path photoPath = Path.of("users/" + userId + "/photo.jpg");
-        downloadTelegramFile(fileId, photoPath);
+        setWorkingPhoto(downloadTelegramPhoto(photo));
         sendTextMessage("Фото готово до роботи");
 
     }
 
     public void mergeCommand() {
-        mode = AppMode.MERGE;
-        imageList.clear();
+        UserSession session = session();
+        session.setMode(AppMode.MERGE);
+        session.getImageList().clear();
 
         String text = loadMessage("merge");
         sendPhotoMessage("merge");
@@ -115,34 +314,37 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
 
     public void mergeAddPhoto() {
         var photo = getMessagePhotoList().getLast();
-        var fileId = photo.getFileId();
 
+        List<byte[]> imageList = session().getImageList();
         int count = imageList.size() + 1;
-        String userId = getCurrentChatId();
-        Path photoPath = Path.of("users/" + userId + "/photo" + count + ".jpg");
-        downloadTelegramFile(fileId, photoPath);
-        imageList.add(photoPath);
+        byte[] bytes = downloadTelegramPhoto(photo);
+        imageList.add(bytes);
+        persistUserFile("photo" + count + ".jpg", bytes);
         sendTextMessage(count + " фото готово до роботи");
     }
 
     public void mergeButtonCallback() {
+        List<byte[]> imageList = session().getImageList();
         if(imageList.size() < 2) {
             sendTextMessage("Спочатку завантажте або створіть зображення");
             return;
         }
 
-        String userId = getCurrentChatId();
-        Path photoPath = Path.of("users/" + userId + "/result.jpg");
-
         String buttonKey = getButtonKey();
         String prompt = loadPrompt(buttonKey);
-        aiService.mergeImages(imageList, prompt, photoPath);
-        sendPhotoMessage(photoPath);
+        List<byte[]> images = List.copyOf(imageList);
+        String key = flightKey(buttonKey, images);
+        if (alreadyRunning(imageFlights, key) || !checkRateLimit(AIService.IMAGE_MODEL))
+            return;
+        onComplete(startFlight(imageFlights, key, AIService.IMAGE_MODEL, () -> aiService.mergeImagesAsync(images, prompt)), result -> {
+            persistUserFile("result.jpg", result);
+            sendPhotoMessage(result);
+        });
 
     }
 
     public void partyCommand() {
-        mode = AppMode.PARTY;
+        session().setMode(AppMode.PARTY);
         String text = loadMessage("party");
         sendPhotoMessage("party");
         sendTextButtonsMessage(text, "party_image1", "🐺 Місячне затемнення (перевертень)",
@@ -153,7 +355,7 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
     }
 
     public void onPhoto() {
-        if(mode == AppMode.MERGE) {
+        if(session().getMode() == AppMode.MERGE) {
             mergeAddPhoto();
         } else {
             savePhoto();
@@ -161,7 +363,8 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
     }
 
     public void imageButtonCallback(){
-        imageType = getButtonKey();
+        String imageType = getButtonKey();
+        session().setImageType(imageType);
 
         String text = loadMessage("create");
 
@@ -174,23 +377,26 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
     }
 
     public void partyButtonCallback(){
-        String userId = getCurrentChatId();
-        Path photoPath = Path.of("users/" + userId + "/photo.jpg");
-        Path resultPath = Path.of("users/" + userId + "/result.jpg");
-        if(!Files.exists(root.resolve(photoPath))) {
+        byte[] photo = loadWorkingPhoto();
+        if(photo == null) {
             sendTextMessage("Спочатку завантажте або створіть зображення");
             return;
         }
 
         String buttonKey = getButtonKey();
         String prompt = loadPrompt(buttonKey);
-        aiService.editImage(photoPath,  prompt, resultPath);
-        sendPhotoMessage(resultPath);
+        String key = flightKey(buttonKey, List.of(photo));
+        if (alreadyRunning(imageFlights, key) || !checkRateLimit(AIService.IMAGE_MODEL))
+            return;
+        onComplete(startFlight(imageFlights, key, AIService.IMAGE_MODEL, () -> aiService.editImageAsync(photo, prompt)), result -> {
+            persistUserFile("result.jpg", result);
+            sendPhotoMessage(result);
+        });
 
     }
 
     public void videoCommand() {
-        mode = AppMode.VIDEO;
+        session().setMode(AppMode.VIDEO);
         String text = loadMessage("video");
         sendPhotoMessage("video");
         sendTextButtonsMessage(text,
@@ -202,19 +408,28 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
     }
 
     public void videoButtonCallback(){
-        String userId = getCurrentChatId();
-        Path photoPath = Path.of("users/" + userId + "/photo.jpg");
-        Path resultPath = Path.of("users/" + userId + "/video.mp4");
-        if(!Files.exists(root.resolve(photoPath))) {
+        byte[] photo = loadWorkingPhoto();
+        Path resultPath = userFile("video.mp4");
+        if(photo == null) {
             sendTextMessage("Спочатку завантажте або створіть зображення");
             return;
         }
         String buttonKey = getButtonKey();
         String prompt = loadPrompt(buttonKey);
+        // Усі відео чату пишуться в один video.mp4, тож одночасно — лише одне відео на чат.
+        // Інша кнопка під час генерації не приєднується до неї мовчки: кажемо, що вибір не запущено
+        String key = flightKey("video", List.of());
+        if (alreadyRunning(videoFlights, key, "🎬 Відео вже генерується, тож цей вибір не запущено. "
+                + "Дочекайтеся результату, а тоді оберіть інший варіант.") || !checkRateLimit(AIService.VIDEO_MODEL))
+            return;
         sendTextMessage("Генерація відео займе близько 20 секунд");
 
-        aiService.videoFromTextAndImage(photoPath,  prompt, resultPath);
-        sendVideoMessage(resultPath);
+        onComplete(startFlight(videoFlights, key, AIService.VIDEO_MODEL,
+                        () -> aiService.videoFromTextAndImageAsync(getCurrentChatId(), photo, prompt, resultPath)),
+                r -> {
+                    storageSweeper.markDirty(getCurrentChatId());
+                    sendVideoMessage(resultPath);
+                });
 
     }
 
@@ -222,16 +437,42 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
 
 
 
+    /**
+     * Відповідь ШІ на запитання: текст зʼявляється поступово, в одному повідомленні
+     */
+    public void answerQuestion() {
+        String question = getMessageText();
+        if (!checkRateLimit(AIService.TEXT_MODEL))
+            return;
+
+        // Помилку показуємо в тому самому повідомленні, замість заглушки — окремого "⚠️" не надсилаємо
+        StreamingMessage answer = sendStreamingMessage("⏳ Думаю...");
+        refundIfRejected(AIService.TEXT_MODEL, aiService.askForAnswerStreamAsync(loadPrompt("main") + "\n" + question, answer::update))
+                .whenComplete((text, error) -> {
+                    if (error == null) {
+                        answer.finish(text);
+                        return;
+                    }
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    logError(null, cause);
+                    answer.finish("😢 Не вдалося отримати відповідь. " + (cause instanceof ModelGuard.UnavailableException ? cause.getMessage() : ""));
+                });
+    }
+
     // користувачнаписав повідомлення
     //TODO: основний функціонал бота писатимемо тут
     public void onMessage() {
+        AppMode mode = session().getMode();
 
         if(mode == AppMode.CREATE) {
             imageMessage();
         } else if(mode == AppMode.EDIT) {
             editMessage();
         }
-        else {
+        else if (chatAnswers) {
+            // Кожна відповідь — платний запит до Gemini, тож вмикається явно (CHAT_ANSWERS=true)
+            answerQuestion();
+        } else {
             String userInputMessage = getMessageText();
 
             sendTextMessage("*Привіт!*");
@@ -244,6 +485,13 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
 
 
 
+    // Після кожної події зберігаємо стан сесії (у журнал потрапляють лише зміни)
+    @Override
+    public void onUpdateEventReceived(Update updateEvent) {
+        if (getCurrentChatId() != null)
+            sessions.save(session());
+    }
+
     // Ініціалізація. Додаємо обробники подій
     @Override
     public void onInitialize() {
@@ -261,6 +509,8 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
         addButtonHandler("^party.*", this::partyButtonCallback);
         addButtonHandler("^video.*", this::videoButtonCallback);
 
+        // Якщо MAIN_MENU змінилось — фоново оновлюємо його у всіх чатах, де бот уже був
+        showMainMenuForAllChats(MAIN_MENU);
 
     }
 ;
@@ -276,10 +526,110 @@ public class HalloweenBoltApp extends SimpleTelegramBot {
 
     // Створюємо Telegram-бота
     public static void main(String[] args) throws TelegramApiException {
-        Dotenv env = Dotenv.configure().ignoreIfMissing().load();
+        // Тренувальний запуск під час збирання Docker-образу: лише завантажуємо класи для AOT-кешу
+        if (args.length > 0 && "--warmup".equals(args[0])) {
+            Warmup.run();
+            // AOT-кеш JVM записує під час виходу
+            System.exit(0);
+        }
+
+        AppConfig env = AppConfig.get();
         String telegramToken = env.get("TELEGRAM_TOKEN");
 
+        // Дозволяє правити промпти на льоту, без перезапуску бота
+        if (env.getBoolean("TEMPLATES_HOT_RELOAD", false))
+            getTemplates().startHotReload();
+
+        // Метрики у форматі Prometheus: http://METRICS_HOST:METRICS_PORT/metrics
+        if (env.has("METRICS_PORT"))
+            new MetricsServer(env.get("METRICS_HOST", "127.0.0.1"), env.getInt("METRICS_PORT", 0)).start();
+
+        // Кластер: CLUSTER_ROLE=ingress приймає webhook і розподіляє чати між вузлами CLUSTER_ROLE=worker
+        String clusterRole = env.get("CLUSTER_ROLE", "");
+        if ("ingress".equals(clusterRole)) {
+            startClusterIngress(env, telegramToken);
+            return;
+        }
+
+        var bot = new HalloweenBoltApp(telegramToken);
+
+        if ("worker".equals(clusterRole)) {
+            startClusterWorker(env, bot);
+            return;
+        }
+
+        // WEBHOOK_URL задано — Telegram сам надсилає події на наш сервер, інакше long polling
+        String webhookUrl = env.get("WEBHOOK_URL");
+        if (env.has("WEBHOOK_URL")) {
+            String secret = env.get("WEBHOOK_SECRET");
+            String path = URI.create(webhookUrl).getPath();
+            var webhookServer = new WebhookServer(bot, env.get("WEBHOOK_HOST", "0.0.0.0"),
+                    env.getInt("WEBHOOK_PORT", 8080),
+                    path == null || path.isEmpty() ? "/" : path, secret);
+            webhookServer.start();
+            bot.registerWebhook(webhookUrl, secret);
+            bot.resumeVideoJobs();
+
+            // Спершу перестаємо приймати події, потім дочікуємося вже прийнятих
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                webhookServer.stop();
+                bot.shutdown();
+            }, "shutdown"));
+            return;
+        }
+
+        bot.deleteWebhook();
         var botsApplication = new TelegramBotsLongPollingApplication();
-        botsApplication.registerBot(telegramToken, new HalloweenBoltApp(telegramToken));
+        botsApplication.registerBot(telegramToken, bot);
+        bot.resumeVideoJobs();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                botsApplication.close();
+            } catch (Exception e) {
+                System.out.println("Не вдалося зупинити long polling: " + e.getMessage());
+            }
+            bot.shutdown();
+        }, "shutdown"));
+    }
+
+    private static void startClusterIngress(AppConfig env, String telegramToken) {
+        String webhookUrl = env.get("WEBHOOK_URL");
+        String secret = env.get("WEBHOOK_SECRET");
+        String path = URI.create(webhookUrl).getPath();
+
+        var httpClient = new OkHttpClient.Builder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .readTimeout(Duration.ofSeconds(30))
+                .build();
+        var ingress = new ClusterIngress(httpClient, env.get("WEBHOOK_HOST", "0.0.0.0"),
+                env.getInt("WEBHOOK_PORT", 8080),
+                path == null || path.isEmpty() ? "/" : path, secret, env.get("CLUSTER_SECRET"));
+        ingress.start();
+        SimpleTelegramBot.registerWebhook(SimpleTelegramBot.createTelegramClient(httpClient, telegramToken), webhookUrl, secret);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(ingress::stop, "shutdown"));
+    }
+
+    /**
+     * Робочий вузол не спілкується з Telegram про webhook: події йому пересилає вхідний вузол
+     */
+    private static void startClusterWorker(AppConfig env, HalloweenBoltApp bot) {
+        String secret = env.get("CLUSTER_SECRET");
+        var webhookServer = new WebhookServer(bot, env.get("WORKER_HOST", "0.0.0.0"),
+                env.getInt("WORKER_PORT", 8081), "/webhook", secret);
+        webhookServer.start();
+
+        var member = new ClusterMember(new OkHttpClient(), env.get("CLUSTER_INGRESS_URL"),
+                env.get("WORKER_URL"), secret);
+        member.start();
+        bot.resumeVideoJobs();
+
+        // Спершу виходимо з кластера, щоб нові події наших чатів пішли іншим вузлам
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            member.leave();
+            webhookServer.stop();
+            bot.shutdown();
+        }, "shutdown"));
     }
-}
\ No newline at end of file
+}
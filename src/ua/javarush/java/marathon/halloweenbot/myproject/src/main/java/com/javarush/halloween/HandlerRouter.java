@@ -0,0 +1,133 @@
+package com.javarush.halloween;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Маршрутизатор подій до обробників.
+ * Заповнюється один раз в onInitialize(), після чого лише читається:
+ * - команди шукаються в хеш-мапі за повним текстом ("/start");
+ * - callback data кнопок — у префіксному дереві (для regex виду "^prefix.*"),
+ *   у хеш-мапі (для точних ключів) і лише в крайньому разі — прекомпільованими Pattern;
+ * - текст і фото мають окремі списки обробників.
+ * Вартість маршрутизації не залежить від кількості зареєстрованих обробників.
+ */
+public class HandlerRouter {
+    // "^create_.*" → "create_"; "merge_join" → точний ключ
+    private static final Pattern PREFIX_REGEX = Pattern.compile("\\^?([\\w\\-]*)\\.\\*\\$?");
+    private static final Pattern LITERAL_REGEX = Pattern.compile("\\^?([\\w\\-]+)\\$?");
+
+    private final Map<String, List<Route>> commands = new HashMap<>();
+    private final Map<String, List<Route>> exactButtons = new HashMap<>();
+    private final TrieNode buttonPrefixes = new TrieNode();
+    private final List<PatternRoute> buttonPatterns = new ArrayList<>();
+    private final List<Route> textHandlers = new ArrayList<>();
+    private final List<Route> photoHandlers = new ArrayList<>();
+
+    /**
+     * Обробник разом з іменем (для логів і метрик)
+     */
+    public record Route(String name, SimpleTelegramBot.MyFunctionalInterface handler) {
+    }
+
+    private record PatternRoute(Pattern pattern, Route route) {
+    }
+
+    private static class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private final List<Route> routes = new ArrayList<>();
+    }
+
+    public void addCommand(String command, SimpleTelegramBot.MyFunctionalInterface handler) {
+        String key = "/" + command;
+        commands.computeIfAbsent(key, k -> new ArrayList<>()).add(new Route("command:" + key, handler));
+    }
+
+    public void addButton(String regex, SimpleTelegramBot.MyFunctionalInterface handler) {
+        Route route = new Route("button:" + regex, handler);
+
+        Matcher prefix = PREFIX_REGEX.matcher(regex);
+        if (prefix.matches()) {
+            TrieNode node = buttonPrefixes;
+            for (char c : prefix.group(1).toCharArray())
+                node = node.children.computeIfAbsent(c, k -> new TrieNode());
+            node.routes.add(route);
+            return;
+        }
+
+        Matcher literal = LITERAL_REGEX.matcher(regex);
+        if (literal.matches()) {
+            exactButtons.computeIfAbsent(literal.group(1), k -> new ArrayList<>()).add(route);
+            return;
+        }
+
+        buttonPatterns.add(new PatternRoute(Pattern.compile(regex), route));
+    }
+
+    public void addMessageText(SimpleTelegramBot.MyFunctionalInterface handler) {
+        textHandlers.add(new Route("text", handler));
+    }
+
+    public void addMessagePhoto(SimpleTelegramBot.MyFunctionalInterface handler) {
+        photoHandlers.add(new Route("photo", handler));
+    }
+
+    /**
+     * Викликаємо action для кожного обробника, що підходить до події
+     */
+    public void route(Update update, Consumer<Route> action) {
+        if (update.hasMessage()) {
+            Message message = update.getMessage();
+            String text = message.getText();
+
+            if (text != null && !text.isEmpty()) {
+                forEach(commands.get(text), action);
+
+                if (!message.isCommand())
+                    forEach(textHandlers, action);
+            }
+
+            if (message.hasPhoto() && !message.isCommand())
+                forEach(photoHandlers, action);
+        }
+
+        if (update.hasCallbackQuery()) {
+            String data = update.getCallbackQuery().getData();
+            if (data == null || data.isEmpty())
+                return;
+
+            // Проходимо дерево префіксів по символах callback data
+            TrieNode node = buttonPrefixes;
+            forEach(node.routes, action);
+            for (int i = 0; i < data.length() && node != null; i++) {
+                node = node.children.get(data.charAt(i));
+                if (node != null)
+                    forEach(node.routes, action);
+            }
+
+            forEach(exactButtons.get(data), action);
+
+            for (int i = 0; i < buttonPatterns.size(); i++) {
+                PatternRoute patternRoute = buttonPatterns.get(i);
+                if (patternRoute.pattern().matcher(data).matches())
+                    action.accept(patternRoute.route());
+            }
+        }
+    }
+
+    private static void forEach(List<Route> routes, Consumer<Route> action) {
+        if (routes == null)
+            return;
+
+        for (int i = 0; i < routes.size(); i++)
+            action.accept(routes.get(i));
+    }
+}
@@ -0,0 +1,190 @@
+package com.javarush.halloween;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Окремий етап перетворення картинок у JPEG.
+ * - працює на власному обмеженому пулі потоків, тож кодування не конкурує з обробкою подій;
+ * - кожен потік пулу перевикористовує свої ImageReader/ImageWriter;
+ * - зменшує картинку до maxSide (ліміти показу фото в Telegram),
+ *   а завеликі картинки декодує з проріджуванням, щоб не тримати в памʼяті повний розмір.
+ */
+public class ImageTranscoder {
+    // Telegram показує фото максимум 2560 px по довшій стороні
+    public static final int TELEGRAM_MAX_SIDE = 2560;
+    public static final float DEFAULT_QUALITY = 0.92f;
+
+    private static final List<String> JPEG_TYPES = List.of("image/jpeg", "image/jpg");
+
+    private final int maxSide;
+    private final float quality;
+    private final ExecutorService pool;
+
+    // Reader/writer не потокобезпечні, тому в кожного потоку пулу — свої
+    private final ThreadLocal<Map<String, ImageReader>> readers = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<ImageWriter> jpegWriter = ThreadLocal.withInitial(
+            () -> ImageIO.getImageWritersByFormatName("jpeg").next());
+
+    public ImageTranscoder() {
+        this(TELEGRAM_MAX_SIDE, DEFAULT_QUALITY);
+    }
+
+    public ImageTranscoder(int maxSide, float quality) {
+        this(maxSide, quality, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public ImageTranscoder(int maxSide, float quality, int threads) {
+        if (maxSide <= 0)
+            throw new RuntimeException("Розмір картинки має бути додатним: " + maxSide);
+        if (quality <= 0 || quality > 1)
+            throw new RuntimeException("Якість JPEG має бути в межах (0, 1]: " + quality);
+        this.maxSide = maxSide;
+        this.quality = quality;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "image-transcoder-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Перетворюємо картинку на JPEG у пулі транскодера
+     */
+    public CompletableFuture<byte[]> toJpegAsync(byte[] bytes, String mimeType) {
+        return CompletableFuture.supplyAsync(() -> encode(bytes, mimeType), pool);
+    }
+
+    /**
+     * Те саме, але з очікуванням результату (зручно з віртуальних потоків)
+     */
+    public byte[] toJpeg(byte[] bytes, String mimeType) {
+        try {
+            return toJpegAsync(bytes, mimeType).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private byte[] encode(byte[] bytes, String mimeType) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            ImageReader reader = getReader(mimeType, input);
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                // JPEG у межах лімітів надсилаємо як є — без перекодування
+                boolean fits = width <= maxSide && height <= maxSide;
+                if (fits && JPEG_TYPES.contains(mimeType))
+                    return bytes;
+
+                // Завелика картинка: декодуємо лише кожен n-й піксель (памʼять менша в n² разів)
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.max(width, height) / (maxSide * 2));
+                if (subsampling > 1)
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                BufferedImage source = reader.read(0, param);
+                return writeJpeg(toRgb(source));
+            } finally {
+                // Reader із кешу потоку лише скидаємо, а знайдений за вмістом — звільняємо
+                if (readers.get().get(mimeType) == reader)
+                    reader.reset();
+                else
+                    reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Не вдалося перетворити картинку на JPEG", e);
+        }
+    }
+
+    /**
+     * Прибираємо альфу (тло — біле) і зменшуємо до maxSide по довшій стороні
+     */
+    private BufferedImage toRgb(BufferedImage source) {
+        double scale = Math.min(1.0, (double) maxSide / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        if (scale == 1.0 && source.getType() == BufferedImage.TYPE_INT_RGB)
+            return source;
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private byte[] writeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = jpegWriter.get();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+
+        var out = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.reset();
+        }
+        return out.toByteArray();
+    }
+
+    private ImageReader getReader(String mimeType, ImageInputStream input) throws IOException {
+        Map<String, ImageReader> cache = readers.get();
+        ImageReader reader = cache.get(mimeType);
+        if (reader != null)
+            return reader;
+
+        // Спершу за MIME-типом (такий reader кешуємо), а якщо тип невідомий — за вмістом (разовий, його звільняють)
+        Iterator<ImageReader> found = ImageIO.getImageReadersByMIMEType(mimeType);
+        if (found.hasNext()) {
+            reader = found.next();
+            cache.put(mimeType, reader);
+            return reader;
+        }
+
+        found = ImageIO.getImageReaders(input);
+        if (!found.hasNext())
+            throw new IOException("Невідомий формат картинки: " + mimeType);
+        return found.next();
+    }
+}
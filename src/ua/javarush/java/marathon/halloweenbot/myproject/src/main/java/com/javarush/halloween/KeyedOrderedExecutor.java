@@ -0,0 +1,87 @@
+package com.javarush.halloween;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Виконавець задач із гарантією порядку за ключем.
+ * Задачі з різними ключами (чатами) виконуються паралельно,
+ * а задачі з однаковим ключем — строго одна за одною, у порядку надходження.
+ */
+public class KeyedOrderedExecutor implements AutoCloseable {
+    private final ExecutorService executor;
+
+    // Останню задачу кожного ключа тримаємо як «хвіст» ланцюжка
+    private final ConcurrentHashMap<Object, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * За замовчуванням кожна задача отримує власний віртуальний потік
+     */
+    public KeyedOrderedExecutor() {
+        this(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Можна передати й обмежений пул (наприклад, Executors.newFixedThreadPool(n))
+     */
+    public KeyedOrderedExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Поставити задачу в чергу ключа key.
+     * Якщо key == null — задача не має порядку й одразу йде на виконання.
+     */
+    public CompletableFuture<Void> submit(Object key, Runnable task) {
+        pending.incrementAndGet();
+
+        CompletableFuture<Void> next;
+        if (key == null) {
+            next = CompletableFuture.runAsync(task, executor);
+        } else {
+            // Нова задача стартує лише після завершення попередньої (навіть якщо та впала з помилкою)
+            next = tails.compute(key, (k, tail) -> tail == null
+                    ? CompletableFuture.runAsync(task, executor)
+                    : tail.handle((r, e) -> null).thenRunAsync(task, executor));
+        }
+
+        final CompletableFuture<Void> current = next;
+        current.whenComplete((r, e) -> {
+            pending.decrementAndGet();
+            // Прибираємо хвіст, якщо за ним ніхто не став — мапа не росте з кількістю чатів
+            if (key != null)
+                tails.remove(key, current);
+        });
+        return current;
+    }
+
+    /**
+     * Кількість задач, що очікують або виконуються зараз
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Зупиняємо прийом задач і чекаємо завершення вже прийнятих
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            return executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        shutdown(30, TimeUnit.SECONDS);
+    }
+}
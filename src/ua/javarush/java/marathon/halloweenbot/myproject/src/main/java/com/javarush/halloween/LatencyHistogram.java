@@ -0,0 +1,68 @@
+package com.javarush.halloween;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гістограма тривалостей із фіксованими межами (у секундах), як у Prometheus.
+ * Запис — кілька LongAdder без блокувань, тож її можна оновлювати з будь-якого потоку.
+ */
+public class LatencyHistogram {
+    // Від 5 мс (виклики Telegram) до 5 хв (генерація відео)
+    static final double[] BOUNDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300};
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    public void observeNanos(long nanos) {
+        double seconds = nanos / 1e9;
+        int i = 0;
+        while (i < BOUNDS.length && seconds > BOUNDS[i])
+            i++;
+
+        buckets[i].increment();
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Кумулятивна кількість спостережень ≤ BOUNDS[index] (останній індекс — +Inf)
+     */
+    long cumulativeCount(int index) {
+        long total = 0;
+        for (int i = 0; i <= index; i++)
+            total += buckets[i].sum();
+        return total;
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    double getSumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+
+    /**
+     * Оцінка квантиля q (0..1) за межами бакетів
+     */
+    public double quantileSeconds(double q) {
+        long total = count.sum();
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank)
+                return BOUNDS[i];
+        }
+        return BOUNDS[BOUNDS.length - 1];
+    }
+}
@@ -0,0 +1,122 @@
+package com.javarush.halloween;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Вбудовані метрики бота: гістограми тривалостей, лічильники й поточні значення (gauge).
+ * Усі метрики мають не більше однієї мітки — цього достатньо для розрізу
+ * за обробником, методом Telegram API, моделлю чи причиною помилки.
+ * scrape() віддає все в текстовому форматі Prometheus.
+ */
+public final class Metrics {
+    private static final Map<Series, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<Series, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<Series, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Назва метрики + необовʼязкова мітка (label="value")
+     */
+    private record Series(String name, String label, String value) {
+        String render(String suffix, String extraLabel) {
+            StringBuilder sb = new StringBuilder(name).append(suffix);
+            boolean hasLabel = label != null;
+            if (hasLabel || extraLabel != null) {
+                sb.append('{');
+                if (hasLabel)
+                    sb.append(label).append("=\"").append(escape(value)).append('"');
+                if (extraLabel != null)
+                    sb.append(hasLabel ? "," : "").append(extraLabel);
+                sb.append('}');
+            }
+            return sb.toString();
+        }
+    }
+
+    public static LatencyHistogram histogram(String name, String label, String value) {
+        return histograms.computeIfAbsent(new Series(name, label, value), s -> new LatencyHistogram());
+    }
+
+    public static void observe(String name, String label, String value, long nanos) {
+        histogram(name, label, value).observeNanos(nanos);
+    }
+
+    public static void observe(String name, long nanos) {
+        observe(name, null, null, nanos);
+    }
+
+    public static void increment(String name, String label, String value) {
+        counters.computeIfAbsent(new Series(name, label, value), s -> new LongAdder()).increment();
+    }
+
+    public static void gauge(String name, Supplier<? extends Number> supplier) {
+        gauges.put(new Series(name, null, null), supplier);
+    }
+
+    public static void gauge(String name, String label, String value, Supplier<? extends Number> supplier) {
+        gauges.put(new Series(name, label, value), supplier);
+    }
+
+    /**
+     * Усі метрики в текстовому форматі Prometheus (version 0.0.4)
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        for (var group : groupByName(histograms).entrySet()) {
+            out.append("# TYPE ").append(group.getKey()).append(" histogram\n");
+            for (var entry : group.getValue().entrySet()) {
+                Series series = entry.getKey();
+                LatencyHistogram histogram = entry.getValue();
+                for (int i = 0; i <= LatencyHistogram.BOUNDS.length; i++) {
+                    String le = i < LatencyHistogram.BOUNDS.length ? format(LatencyHistogram.BOUNDS[i]) : "+Inf";
+                    out.append(series.render("_bucket", "le=\"" + le + "\"")).append(' ')
+                            .append(histogram.cumulativeCount(i)).append('\n');
+                }
+                out.append(series.render("_sum", null)).append(' ').append(format(histogram.getSumSeconds())).append('\n');
+                out.append(series.render("_count", null)).append(' ').append(histogram.getCount()).append('\n');
+            }
+        }
+
+        for (var group : groupByName(counters).entrySet()) {
+            out.append("# TYPE ").append(group.getKey()).append(" counter\n");
+            for (var entry : group.getValue().entrySet())
+                out.append(entry.getKey().render("", null)).append(' ').append(entry.getValue().sum()).append('\n');
+        }
+
+        for (var group : groupByName(gauges).entrySet()) {
+            out.append("# TYPE ").append(group.getKey()).append(" gauge\n");
+            for (var entry : group.getValue().entrySet()) {
+                Number value = entry.getValue().get();
+                out.append(entry.getKey().render("", null)).append(' ').append(format(value.doubleValue())).append('\n');
+            }
+        }
+
+        return out.toString();
+    }
+
+    private static <T> Map<String, Map<Series, T>> groupByName(Map<Series, T> source) {
+        Map<String, Map<Series, T>> groups = new TreeMap<>();
+        Comparator<Series> byValue = Comparator.comparing(s -> String.valueOf(s.value()));
+        source.forEach((series, value) ->
+                groups.computeIfAbsent(series.name(), k -> new TreeMap<>(byValue)).put(series, value));
+        return groups;
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value))
+            return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,398 @@
+package com.javarush.halloween;
+
+import com.google.genai.errors.ApiException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Захист викликів однієї моделі Gemini/Veo:
+ * - бюджет часу на кожну спробу; виклик, що не вклався, не скасовується (SDK цього не вміє),
+ *   тож дозвіл BoundedExecutor лишається зайнятим, доки він справді не завершиться;
+ * - кілька повторів із випадковою (jitter) затримкою на тимчасових помилках (429, 5xx, мережа,
+ *   а тайм-аут — лише якщо retryTimeouts: інакше платний запит може виконатися двічі);
+ * - за бажанням — «дубль» запиту, якщо перший відповідає довше за звичайний квантиль затримки;
+ * - circuit breaker: після низки невдач одразу відповідаємо «спробуйте пізніше», не чекаючи на сервер.
+ */
+public class ModelGuard {
+    // Поки вибірка мала, квантилю затримки не довіряємо й дубль не запускаємо
+    private static final long MIN_HEDGE_SAMPLES = 20;
+
+    /**
+     * Налаштування захисту моделі.
+     * budget = null — без бюджету часу: виклик іде в потоці того, хто викликає, і чекаємо до кінця.
+     * hedgeQuantile = 0 — без дублювання (для дорогих або неідемпотентних викликів).
+     */
+    public record Policy(Duration budget, int maxAttempts, Duration backoff, double hedgeQuantile,
+                         boolean retryTimeouts, int failureThreshold, Duration openDuration) {
+    }
+
+    /**
+     * Модель зараз недоступна або не відповіла вчасно — користувачу варто спробувати пізніше
+     */
+    public static class UnavailableException extends RuntimeException {
+        public UnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Запит відхилено ще до звернення до моделі: breaker відкритий
+     */
+    public static class RejectedException extends UnavailableException {
+        public RejectedException() {
+            super("Сервіс генерації тимчасово недоступний. Спробуйте, будь ласка, пізніше.", null);
+        }
+    }
+
+    /**
+     * Одна спроба потокового виклику: відкрити потік, зареєструвати його в watch і читати,
+     * викликаючи watch.progress() на кожному фрагменті
+     */
+    @FunctionalInterface
+    public interface StreamAttempt<T> {
+        T run(StreamWatch watch);
+    }
+
+    private enum State {CLOSED, OPEN, HALF_OPEN}
+
+    // Один таймер на всі потокові виклики: лише відлік бюджету, без роботи
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ai-stream-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String model;
+    private final Policy policy;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openUntil;
+
+    public ModelGuard(String model, Policy policy) {
+        this.model = model;
+        this.policy = policy;
+        Metrics.gauge("bot_ai_circuit_open", "model", model, () -> isOpen() ? 1 : 0);
+    }
+
+    /**
+     * Чи відхиляємо зараз запити без звернення до моделі
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.currentTimeMillis() < openUntil;
+    }
+
+    /**
+     * Виконати виклик моделі під захистом
+     */
+    public <T> T call(Supplier<T> call) {
+        acquire();
+
+        // Будь-який вихід без вердикту (Error, переривання) рахуємо невдачею,
+        // інакше пробний запит у HALF_OPEN назавжди лишив би breaker напіввідкритим
+        boolean settled = false;
+        try {
+            RuntimeException last = null;
+            for (int attempt = 1; attempt <= policy.maxAttempts(); attempt++) {
+                try {
+                    T result = attempt(call);
+                    settled = true;
+                    onSuccess();
+                    return result;
+                } catch (RuntimeException e) {
+                    if (!isTransient(e)) {
+                        // Помилка запиту (фільтри, невалідні дані) — модель здорова, повтор не допоможе
+                        settled = true;
+                        onSuccess();
+                        throw e;
+                    }
+                    last = e;
+                    // Покинутий виклик ще виконується і буде оплачений — дорогий запит удруге не запускаємо
+                    if (isTimeout(e) && !policy.retryTimeouts())
+                        break;
+                }
+
+                if (attempt < policy.maxAttempts()) {
+                    Metrics.increment("bot_ai_retries_total", "model", model);
+                    sleep(backoff(attempt));
+                }
+            }
+
+            throw new UnavailableException(last instanceof UnavailableException ? last.getMessage()
+                    : "ШІ зараз не відповідає. Спробуйте, будь ласка, пізніше.", last);
+        } finally {
+            if (!settled)
+                onFailure();
+        }
+    }
+
+    /**
+     * Потоковий виклик під захистом. Бюджет policy.budget() — на очікування першого фрагмента
+     * і кожного наступного: якщо модель мовчить довше, потік закривається, а спроба вважається тайм-аутом.
+     * Повторюємо лише доти, доки не надійшов перший фрагмент, — далі частину відповіді користувач уже бачить.
+     * Дублів немає: другий потік подвоїв би і вартість, і те, що бачить користувач.
+     */
+    public <T> T callStream(StreamAttempt<T> call) {
+        acquire();
+
+        boolean settled = false;
+        try {
+            RuntimeException last = null;
+            for (int attempt = 1; attempt <= policy.maxAttempts(); attempt++) {
+                StreamWatch watch = new StreamWatch(policy.budget());
+                try {
+                    T result = call.run(watch);
+                    watch.stop();
+                    settled = true;
+                    onSuccess();
+                    return result;
+                } catch (RuntimeException e) {
+                    watch.stop();
+                    RuntimeException error = watch.isTimedOut()
+                            ? new UnavailableException("ШІ не відповів вчасно. Спробуйте, будь ласка, пізніше.", new TimeoutException())
+                            : e;
+                    if (!isTransient(error)) {
+                        settled = true;
+                        onSuccess();
+                        throw error;
+                    }
+                    last = error;
+                    if (watch.hasProgress() || (isTimeout(error) && !policy.retryTimeouts()))
+                        break;
+                } finally {
+                    // Error з call.run: сторож не повинен пізніше перервати потік, що пішов далі
+                    watch.stop();
+                }
+
+                if (attempt < policy.maxAttempts()) {
+                    Metrics.increment("bot_ai_retries_total", "model", model);
+                    sleep(backoff(attempt));
+                }
+            }
+
+            throw new UnavailableException(last instanceof UnavailableException ? last.getMessage()
+                    : "ШІ зараз не відповідає. Спробуйте, будь ласка, пізніше.", last);
+        } finally {
+            if (!settled)
+                onFailure();
+        }
+    }
+
+    /**
+     * Сторож потокового виклику: якщо фрагмента немає довше за бюджет — закриває потік
+     * і перериває потік, що його читає (блокуюче читання сокета на віртуальному потоці від цього обривається)
+     */
+    public static final class StreamWatch {
+        private final Duration budget;
+        private final Thread reader = Thread.currentThread();
+        private AutoCloseable stream;
+        private ScheduledFuture<?> timer;
+        private boolean progress;
+        private boolean timedOut;
+        private boolean stopped;
+
+        private StreamWatch(Duration budget) {
+            this.budget = budget;
+            restart();
+        }
+
+        /**
+         * Потік відкрито — саме його закриємо, якщо модель замовкне
+         */
+        public synchronized void open(AutoCloseable stream) {
+            this.stream = stream;
+            if (timedOut)
+                closeStream();
+        }
+
+        /**
+         * Надійшов фрагмент — відлік бюджету починається заново
+         */
+        public synchronized void progress() {
+            progress = true;
+            restart();
+        }
+
+        synchronized boolean hasProgress() {
+            return progress;
+        }
+
+        synchronized boolean isTimedOut() {
+            return timedOut;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (timer != null)
+                timer.cancel(false);
+            // Переривання, що не встигло нікого розбудити, не повинне зачепити наступну роботу потоку
+            if (timedOut && reader == Thread.currentThread())
+                Thread.interrupted();
+        }
+
+        private synchronized void restart() {
+            if (budget == null || stopped)
+                return;
+            if (timer != null)
+                timer.cancel(false);
+            timer = watchdog.schedule(this::expire, budget.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        private synchronized void expire() {
+            if (stopped)
+                return;
+            timedOut = true;
+            closeStream();
+            reader.interrupt();
+        }
+
+        private void closeStream() {
+            try {
+                if (stream != null)
+                    stream.close();
+            } catch (Exception e) {
+                // потік уже закрито
+            }
+        }
+    }
+
+    /**
+     * Одна спроба з бюджетом часу і, можливо, дублем
+     */
+    private <T> T attempt(Supplier<T> call) {
+        if (policy.budget() == null)
+            return call.get();
+
+        long deadline = System.nanoTime() + policy.budget().toNanos();
+        CompletableFuture<T> first = CompletableFuture.supplyAsync(call, executor);
+        CompletableFuture<T> second = null;
+        CompletableFuture<T> result = first;
+
+        try {
+            long hedgeAfter = hedgeDelayNanos();
+            if (hedgeAfter > 0 && hedgeAfter < policy.budget().toNanos()) {
+                try {
+                    return first.get(hedgeAfter, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    // Перший запит «завис» довше за звичайне — паралельно пускаємо другий і беремо той, що встигне
+                    Metrics.increment("bot_ai_hedged_total", "model", model);
+                    second = CompletableFuture.supplyAsync(call, executor);
+                    result = firstSuccess(first, second);
+                }
+            }
+            return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new UnavailableException("ШІ не відповів вчасно. Спробуйте, будь ласка, пізніше.", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            // Запити, що ще виконуються (тайм-аут чи програлий дубль), тримають дозвіл виконавця до свого кінця
+            BoundedExecutor.holdPermitUntil(first);
+            if (second != null)
+                BoundedExecutor.holdPermitUntil(second);
+        }
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        return e instanceof UnavailableException && e.getCause() instanceof TimeoutException;
+    }
+
+    private long hedgeDelayNanos() {
+        if (policy.hedgeQuantile() <= 0)
+            return 0;
+
+        LatencyHistogram latency = Metrics.histogram("bot_ai_request_duration_seconds", "model", model);
+        if (latency.getCount() < MIN_HEDGE_SAMPLES)
+            return 0;
+        return (long) (latency.quantileSeconds(policy.hedgeQuantile()) * 1e9);
+    }
+
+    private static <T> CompletableFuture<T> firstSuccess(CompletableFuture<T> a, CompletableFuture<T> b) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        a.whenComplete((r, e) -> {
+            if (e == null) result.complete(r);
+            else b.whenComplete((r2, e2) -> {
+                if (e2 == null) result.complete(r2);
+                else result.completeExceptionally(e);
+            });
+        });
+        b.whenComplete((r, e) -> {
+            if (e == null) result.complete(r);
+        });
+        return result;
+    }
+
+    /**
+     * Тимчасові помилки: тайм-аут, мережа, перевантаження (429) і збої сервера (5xx)
+     */
+    static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UnavailableException || cause instanceof TimeoutException
+                    || cause instanceof IOException || cause instanceof UncheckedIOException)
+                return true;
+            if (cause instanceof ApiException api)
+                return api.code() == 429 || api.code() >= 500;
+            if (cause.getCause() == cause)
+                break;
+        }
+        return false;
+    }
+
+    /**
+     * Експоненційна затримка з випадковим розкидом (jitter), щоб повтори різних запитів не йшли хвилею
+     */
+    private long backoff(int attempt) {
+        long cap = policy.backoff().toMillis() << (attempt - 1);
+        return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+    }
+
+    private synchronized void acquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() < openUntil)
+                throw new RejectedException();
+            // Час вийшов — пропускаємо один пробний запит
+            state = State.HALF_OPEN;
+        } else if (state == State.HALF_OPEN) {
+            throw new RejectedException();
+        }
+    }
+
+    private synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    private synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= policy.failureThreshold()) {
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + policy.openDuration().toMillis();
+            Metrics.increment("bot_ai_circuit_opened_total", "model", model);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.javarush.halloween;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Невелике сховище «ключ → значення», що переживає перезапуск бота.
+ * Читання — з памʼяті, а запис на диск відкладається й групується:
+ * кілька змін поспіль зберігаються одним записом файла.
+ */
+public class PropertiesStore {
+    private static final Logger log = LoggerFactory.getLogger(PropertiesStore.class);
+    private static final long SAVE_DELAY_MILLIS = 500;
+
+    private final Path file;
+    private final Map<String, String> map = new ConcurrentHashMap<>();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean(false);
+
+    public PropertiesStore(Path file) {
+        this.file = file;
+        load();
+    }
+
+    public String get(String key) {
+        return map.get(key);
+    }
+
+    public void put(String key, String value) {
+        if (!value.equals(map.put(key, value)))
+            scheduleSave();
+    }
+
+    public void remove(String key) {
+        if (map.remove(key) != null)
+            scheduleSave();
+    }
+
+    public Map<String, String> asMap() {
+        return Map.copyOf(map);
+    }
+
+    /**
+     * Негайно записуємо поточний стан на диск
+     */
+    public synchronized void flush() {
+        saveScheduled.set(false);
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+
+            Properties properties = new Properties();
+            properties.putAll(map);
+
+            // Пишемо в тимчасовий файл і підміняємо — файл не буде «напівзаписаним»
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Не вдалося зберегти {}", file, e);
+        }
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            var delayed = CompletableFuture.delayedExecutor(SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            CompletableFuture.runAsync(this::flush, delayed);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file))
+            return;
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Properties properties = new Properties();
+            properties.load(reader);
+            properties.forEach((k, v) -> map.put(k.toString(), v.toString()));
+        } catch (IOException e) {
+            log.warn("Не вдалося прочитати {}", file, e);
+        }
+    }
+}
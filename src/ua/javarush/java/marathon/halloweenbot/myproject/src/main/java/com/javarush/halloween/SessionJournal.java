@@ -0,0 +1,294 @@
+package com.javarush.halloween;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Журнал станів сесій, що переживає перезапуск бота.
+ * - кожна зміна дописується в кінець sessions.log (append-only) фоновим потоком;
+ * - fsync робимо раз на секунду для всієї пачки змін, а не на кожну подію;
+ * - коли журнал розростається, весь стан записуємо в sessions.snapshot, а журнал обнуляємо;
+ * - під час старту snapshot і журнал читаються через memory-mapped файли.
+ * Кожен запис має довжину й CRC32, тож недописаний «хвіст» після аварії просто відкидається.
+ */
+public class SessionJournal implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(SessionJournal.class);
+    private static final int SNAPSHOT_MAGIC = 0x53455331; // "SES1"
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    private static final long COMPACT_LOG_BYTES = 4L << 20;
+    // Стан чатів, які місяць не писали боту, більше не відновлюємо
+    private static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * Стан сесії, який ми зберігаємо (картинки лишаються файлами в users/)
+     */
+    public record State(String mode, String imageType, int mergeCount, long lastAccess) {
+        boolean sameAs(State other) {
+            return other != null && Objects.equals(mode, other.mode)
+                    && Objects.equals(imageType, other.imageType) && mergeCount == other.mergeCount;
+        }
+    }
+
+    private final Path logFile;
+    private final Path snapshotFile;
+    private final Path usersDir;
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private FileChannel logChannel;
+
+    public SessionJournal(Path dataDir, Path usersDir) {
+        this.logFile = dataDir.resolve("sessions.log");
+        this.snapshotFile = dataDir.resolve("sessions.snapshot");
+        this.usersDir = usersDir;
+
+        long started = System.nanoTime();
+        try {
+            Files.createDirectories(dataDir);
+            readFile(snapshotFile, true);
+            long validLogBytes = readFile(logFile, false);
+            logChannel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            // Обрізаємо пошкоджений хвіст, інакше нові записи опиняться за ним і не прочитаються
+            if (logChannel.size() > validLogBytes)
+                logChannel.truncate(validLogBytes);
+        } catch (IOException e) {
+            throw new RuntimeException("Не вдалося відкрити журнал сесій " + logFile, e);
+        }
+        log.info("Відновлено {} сесій за {} мс", states.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+        writer = Thread.ofPlatform().daemon().name("session-journal").start(this::writeLoop);
+        Metrics.gauge("bot_session_journal_queue", queue::size);
+    }
+
+    /**
+     * Запамʼятати стан сесії. Якщо він не змінився — нічого не пишемо.
+     * Виклик лише кладе запис у чергу: диск і fsync — справа фонового потоку.
+     */
+    public void save(UserSession session) {
+        State state = new State(session.getMode() != null ? session.getMode().name() : null,
+                session.getImageType(), session.getImageList().size(), session.getLastAccess());
+        State previous = states.put(session.getChatId(), state);
+        if (!state.sameAs(previous))
+            queue.add(encode(session.getChatId(), state));
+    }
+
+    /**
+     * Відновити збережений стан у щойно створену сесію.
+     * Фото для об'єднання беремо з users/<id>/photoN.jpg, які зберіг WriteBehindWriter.
+     */
+    public void restore(UserSession session) {
+        State state = states.get(session.getChatId());
+        if (state == null)
+            return;
+
+        if (state.mode() != null) {
+            try {
+                session.setMode(HalloweenBoltApp.AppMode.valueOf(state.mode()));
+            } catch (IllegalArgumentException e) {
+                // Режим прибрали з коду — лишаємо сесію в початковому стані
+            }
+        }
+        if (state.imageType() != null)
+            session.setImageType(state.imageType());
+
+        Path userDir = usersDir.resolve(session.getChatId());
+        for (int i = 1; i <= state.mergeCount(); i++) {
+            Path photo = userDir.resolve("photo" + i + ".jpg");
+            try {
+                if (!Files.exists(photo))
+                    break;
+                session.getImageList().add(Files.readAllBytes(photo));
+            } catch (IOException e) {
+                log.warn("Не вдалося відновити {}", photo, e);
+                break;
+            }
+        }
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * Дописуємо чергу, робимо fsync і знімок — наступний старт прочитає лише snapshot
+     */
+    @Override
+    public void close() {
+        // Не перериваємо потік: interrupt закрив би FileChannel посеред запису
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                drain();
+                compact();
+                logChannel.close();
+            } catch (IOException e) {
+                log.warn("Не вдалося закрити журнал сесій", e);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (!closed) {
+            try {
+                byte[] first = queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+
+                synchronized (this) {
+                    if (closed)
+                        return;
+                    logChannel.write(ByteBuffer.wrap(first));
+                    drain();
+                    // Один fsync на всю пачку змін за останню секунду
+                    logChannel.force(false);
+                    if (logChannel.size() > COMPACT_LOG_BYTES)
+                        compact();
+                }
+                Thread.sleep(FLUSH_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("Не вдалося записати журнал сесій", e);
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        List<byte[]> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        for (byte[] record : batch)
+            logChannel.write(ByteBuffer.wrap(record));
+    }
+
+    /**
+     * Записуємо весь стан у snapshot (через тимчасовий файл) і обнуляємо журнал
+     */
+    private void compact() throws IOException {
+        long deadline = System.currentTimeMillis() - RETENTION_MILLIS;
+        states.values().removeIf(s -> s.lastAccess() < deadline);
+
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.allocate(4).putInt(0, SNAPSHOT_MAGIC));
+            for (Map.Entry<String, State> entry : states.entrySet())
+                out.write(ByteBuffer.wrap(encode(entry.getKey(), entry.getValue())));
+            out.force(false);
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Усе з журналу вже є в snapshot — починаємо його з нуля
+        logChannel.truncate(0);
+        logChannel.force(false);
+    }
+
+    /**
+     * Запис: [довжина][crc32][chatId, mode, imageType, mergeCount, lastAccess]
+     */
+    private static byte[] encode(String chatId, State state) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeUTF(chatId);
+            out.writeUTF(state.mode() != null ? state.mode() : "");
+            out.writeUTF(state.imageType() != null ? state.imageType() : "");
+            out.writeInt(state.mergeCount());
+            out.writeLong(state.lastAccess());
+            byte[] body = payload.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            return ByteBuffer.allocate(8 + body.length)
+                    .putInt(body.length)
+                    .putInt((int) crc.getValue())
+                    .put(body)
+                    .array();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Читаємо записи файла в states. Повертаємо, скільки байтів на початку файла — цілі записи.
+     */
+    private long readFile(Path file, boolean snapshot) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0)
+            return 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (snapshot && buffer.getInt() != SNAPSHOT_MAGIC) {
+                log.warn("Невідомий формат {}, пропускаємо", file);
+                return 0;
+            }
+
+            long valid = buffer.position();
+            while (buffer.remaining() >= 8) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0 || length > buffer.remaining())
+                    break;
+
+                byte[] body = new byte[length];
+                buffer.get(body);
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum)
+                    break;
+
+                decode(body);
+                valid = buffer.position();
+            }
+            if (valid < channel.size())
+                log.warn("У {} відкинуто пошкоджений хвіст ({} байт)", file, channel.size() - valid);
+            return valid;
+        }
+    }
+
+    private void decode(byte[] body) {
+        ByteBuffer in = ByteBuffer.wrap(body);
+        String chatId = readUtf(in);
+        String mode = readUtf(in);
+        String imageType = readUtf(in);
+        int mergeCount = in.getInt();
+        long lastAccess = in.getLong();
+        states.put(chatId, new State(mode.isEmpty() ? null : mode, imageType.isEmpty() ? null : imageType,
+                mergeCount, lastAccess));
+    }
+
+    private static String readUtf(ByteBuffer in) {
+        int length = Short.toUnsignedInt(in.getShort());
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        // writeUTF пише «modified UTF-8», але chatId/режими/стилі — звичайний ASCII
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,133 @@
+package com.javarush.halloween;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Сховище сесій за chatId.
+ * Читання й запис без блокувань (ConcurrentHashMap), а неактивні сесії
+ * витісняються у фоні: за часом простою (idle TTL) та за максимальною кількістю.
+ */
+public class SessionStore {
+    // Робоче фото є й на диску, тому з памʼяті його відпускаємо значно раніше за саму сесію
+    // (лише коли копія на диску справді є — див. evictPhotos)
+    private static final long PHOTO_TTL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private final ConcurrentHashMap<String, UserSession> sessions = new ConcurrentHashMap<>();
+    private final long idleTtlMillis;
+    private final int maxSize;
+    private final boolean evictPhotos;
+
+    // Журнал, з якого відновлюємо стан після перезапуску (може бути null)
+    private final SessionJournal journal;
+
+    private final ScheduledExecutorService sweeper;
+    private final AtomicBoolean sweepScheduled = new AtomicBoolean(false);
+
+    public SessionStore() {
+        this(null, true);
+    }
+
+    /**
+     * evictPhotos — чи можна відпускати робоче фото з памʼяті (воно зберігається й у users/)
+     */
+    public SessionStore(SessionJournal journal, boolean evictPhotos) {
+        this(Duration.ofHours(6), 50_000, journal, evictPhotos);
+    }
+
+    public SessionStore(Duration idleTtl, int maxSize, SessionJournal journal, boolean evictPhotos) {
+        this.idleTtlMillis = idleTtl.toMillis();
+        this.maxSize = maxSize;
+        this.journal = journal;
+        this.evictPhotos = evictPhotos;
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Запускаємо фонове прибирання. Окремо від конструктора, щоб фоновий потік
+     * не побачив напівстворений обʼєкт; викликається один раз
+     */
+    public SessionStore start() {
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+        return this;
+    }
+
+    /**
+     * Сесія чату chatId (створюється за першого звернення)
+     */
+    public UserSession get(String chatId) {
+        UserSession session = sessions.computeIfAbsent(chatId, this::create);
+        session.touch();
+
+        // Перевищили ліміт — просимо фон прибрати зайве, не гальмуючи обробник
+        if (sessions.size() > maxSize && sweepScheduled.compareAndSet(false, true))
+            sweeper.execute(this::sweep);
+
+        return session;
+    }
+
+    /**
+     * Нова сесія: якщо чат уже був до перезапуску — відновлюємо його стан із журналу
+     */
+    private UserSession create(String chatId) {
+        UserSession session = new UserSession(chatId);
+        if (journal != null)
+            journal.restore(session);
+        return session;
+    }
+
+    /**
+     * Зберегти стан сесії в журнал (якщо він є)
+     */
+    public void save(UserSession session) {
+        if (journal != null)
+            journal.save(session);
+    }
+
+    /**
+     * Кількість сесій у памʼяті
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Прибираємо неактивні сесії, а якщо їх усе одно забагато — найстаріші за доступом
+     */
+    void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            long deadline = now - idleTtlMillis;
+            sessions.values().removeIf(s -> s.getLastAccess() < deadline);
+
+            // Без копії на диску фото з памʼяті не відпускаємо — його більше ніде немає
+            if (evictPhotos) {
+                for (UserSession session : sessions.values()) {
+                    if (session.getLastAccess() < now - PHOTO_TTL_MILLIS)
+                        session.setPhoto(null);
+                }
+            }
+
+            int overflow = sessions.size() - maxSize;
+            if (overflow > 0) {
+                sessions.values().stream()
+                        .sorted(Comparator.comparingLong(UserSession::getLastAccess))
+                        .limit(overflow)
+                        .toList()
+                        .forEach(s -> sessions.remove(s.getChatId(), s));
+            }
+        } finally {
+            sweepScheduled.set(false);
+        }
+    }
+}
@@ -1,20 +1,20 @@
 package com.javarush.halloween;
 
-import io.github.cdimascio.dotenv.Dotenv;
+import okhttp3.OkHttpClient;
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
-import org.telegram.telegrambots.longpolling.util.LongPollingSingleThreadUpdateConsumer;
-import org.telegram.telegrambots.meta.api.methods.GetFile;
+import org.telegram.telegrambots.longpolling.interfaces.LongPollingUpdateConsumer;
+import org.telegram.telegrambots.meta.TelegramUrl;
 import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.commands.DeleteMyCommands;
-import org.telegram.telegrambots.meta.api.methods.commands.GetMyCommands;
 import org.telegram.telegrambots.meta.api.methods.commands.SetMyCommands;
 import org.telegram.telegrambots.meta.api.methods.menubutton.SetChatMenuButton;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updates.DeleteWebhook;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.methods.send.SendVideo;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageReplyMarkup;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
-import org.telegram.telegrambots.meta.api.objects.File;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.commands.BotCommand;
@@ -27,95 +27,280 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMa
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Objects;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer {
+public class SimpleTelegramBot implements LongPollingUpdateConsumer {
     private static final Logger log = LoggerFactory.getLogger(SimpleTelegramBot.class);
     // Внутрішні дані
     protected final String token;
     protected final TelegramClient client;
+    protected final OkHttpClient httpClient;
     protected Path root;
+    // Стан бота: data/, users/, cache/ (див. getDataRoot)
+    protected Path dataRoot;
 
-    // Список обробників подій 
+    // Завантаження файлів через спільний HTTP-клієнт з дедуплікацією за file_unique_id
+    private final TelegramFileDownloader downloader;
+
+    // file_id уже завантажених у Telegram статичних картинок (images/*.jpg)
+    private final PropertiesStore fileIdCache;
+
+    // Яке меню (команди + кнопка) вже встановлене в кожному чаті: чат → підпис меню
+    private final PropertiesStore menuState;
+
+    // Маршрутизатор подій до обробників
     private volatile boolean isInitialized = false;
-    private final List<MyFunctionalInterface> handlerList = new ArrayList<>();
+    private final HandlerRouter router = new HandlerRouter();
+    private final Consumer<HandlerRouter.Route> routeExecutor = this::executeRoute;
     private final ThreadLocal<Update> updateEvent = new ThreadLocal<>();
 
+    // Диспетчер: різні чати — паралельно, один чат — строго по черзі
+    protected final KeyedOrderedExecutor dispatcher = new KeyedOrderedExecutor();
+
+    // Вихідні повідомлення: обробник ставить їх у чергу, а відправляє черга з урахуванням лімітів Telegram
+    protected final TelegramSendQueue sendQueue = new TelegramSendQueue();
+
+    // Час від старту JVM до першої обробленої події — головний показник холодного старту
+    private final AtomicBoolean firstUpdateHandled = new AtomicBoolean(false);
+
     public SimpleTelegramBot(String token) {
         // За допомогою client наш бот звертатиметься до серверів Telegram
         this.token = token;
-        this.client = new OkHttpTelegramClient(token);
+        this.httpClient = new OkHttpClient.Builder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .readTimeout(Duration.ofSeconds(60))
+                .build();
+        this.client = createTelegramClient(httpClient, token);
 
         // Формуємо абсолютний шлях до папки з ресурсами
         this.root = SimpleTelegramBot.getProjectRoot();
+        this.dataRoot = SimpleTelegramBot.getDataRoot();
+        this.fileIdCache = new PropertiesStore(dataRoot.resolve("data/file_ids.properties"));
+        this.menuState = new PropertiesStore(dataRoot.resolve("data/menus.properties"));
+        // Bot API віддає через getFile файли до 20 МБ; власний Bot API сервер дозволяє більше
+        AppConfig config = AppConfig.get();
+        this.downloader = new TelegramFileDownloader(client, httpClient, getTelegramBaseUrl() + "/file/bot" + token, dataRoot,
+                config.getLong("MAX_DOWNLOAD_MB", 20) << 20,
+                config.getLong("DOWNLOAD_CACHE_MB", 256) << 20);
+
+        Metrics.gauge("bot_dispatch_queue_depth", dispatcher::getPendingCount);
+    }
+
+    /**
+     * Просимо Telegram надсилати події на url (webhook) замість getUpdates.
+     * secretToken Telegram повертає в заголовку X-Telegram-Bot-Api-Secret-Token кожного запиту.
+     */
+    public void registerWebhook(String url, String secretToken) {
+        registerWebhook(client, url, secretToken);
+    }
+
+    /**
+     * Те саме для вузлів без бота (вхідний вузол кластера)
+     */
+    public static void registerWebhook(TelegramClient client, String url, String secretToken) {
+        var setWebhook = SetWebhook.builder()
+                .url(url)
+                .secretToken(secretToken)
+                .build();
+        try {
+            client.execute(setWebhook);
+        } catch (TelegramApiException e) {
+            throw new RuntimeException("Не вдалося зареєструвати webhook " + url, e);
+        }
+    }
+
+    /**
+     * Повертаємося до getUpdates: поки webhook зареєстрований, long polling не отримує подій
+     */
+    public void deleteWebhook() {
+        try {
+            client.execute(new DeleteWebhook());
+        } catch (TelegramApiException e) {
+            throw new RuntimeException("Не вдалося видалити webhook", e);
+        }
+    }
+
+    /**
+     * Клієнт Telegram Bot API. TELEGRAM_API_URL дозволяє замінити api.telegram.org
+     * на власний Bot API сервер або на заглушку для локальних тестів.
+     */
+    public static TelegramClient createTelegramClient(OkHttpClient httpClient, String token) {
+        URI uri = URI.create(getTelegramBaseUrl());
+        var telegramUrl = TelegramUrl.builder()
+                .schema(uri.getScheme())
+                .host(uri.getHost())
+                .port(uri.getPort() != -1 ? uri.getPort() : "https".equals(uri.getScheme()) ? 443 : 80)
+                .build();
+        return new OkHttpTelegramClient(httpClient, token, telegramUrl);
+    }
+
+    private static String getTelegramBaseUrl() {
+        return AppConfig.get().get("TELEGRAM_API_URL", "https://api.telegram.org").replaceAll("/+$", "");
+    }
+
+    /**
+     * Плавна зупинка: дочікуємося обробників, що вже виконуються, і відправлення їхніх відповідей
+     */
+    public void shutdown() {
+        dispatcher.shutdown(15, TimeUnit.SECONDS);
+        sendQueue.close();
+        fileIdCache.flush();
+        menuState.flush();
+    }
+
+    /**
+     * Від сервера Telegram надійшла пачка подій.
+     * Розкладаємо їх по чергах чатів: порядок у межах чату зберігається,
+     * а різні чати обробляються паралельно на віртуальних потоках.
+     */
+    @Override
+    public void consume(List<Update> updates) {
+        for (Update update : updates) {
+            dispatcher.submit(getChatKey(update), () -> consume(update));
+        }
     }
 
     /**
      * Від сервера Telegram надійшла подія Update updateEvent.
      * Потрібно викликати onInitialize() — лише один раз.
      * Потрібно викликати handler, якщо тип події збігається.
+     * Виконується в потоці, який обробляє подію, тому updateEvent прив'язуємо саме до нього.
      */
-    @Override
     public void consume(Update updateEvent) {
         //call onInitialize() with try..catch
-        try {
-            if (!isInitialized) {
-                isInitialized = true;
-                onInitialize();
+        if (!isInitialized) {
+            synchronized (this) {
+                if (!isInitialized) {
+                    try {
+                        onInitialize();
+                    } catch (Exception e) {
+                        System.out.println("onInitialize ERROR: " + e.getMessage());
+                        handleError(updateEvent, e);
+                    } finally {
+                        isInitialized = true;
+                    }
+                }
             }
-        } catch (Exception e) {
-            System.out.println("onInitialize ERROR: " + e.getMessage());
-            handleError(updateEvent, e);
         }
 
-        //call handler-list with try..catch for every handler 
+        //call matching handlers with try..catch for every handler
         try {
             this.updateEvent.set(updateEvent);
 
-            for (var handler : handlerList) {
-                try {
-                    handler.execute();
-                } catch (Exception e) {
-                    System.out.println("onHandler ERROR: " + e.getMessage());
-                    handleError(updateEvent, e);
-                }
-            }
+            router.route(updateEvent, routeExecutor);
 
             onUpdateEventReceived(this.updateEvent.get());
         } catch (Exception e) {
             System.out.println("onUpdateEventReceived ERROR: " + e.getMessage());
             handleError(updateEvent, e);
+        } finally {
+            // Потік може бути перевикористаний для іншого чату
+            this.updateEvent.remove();
+            reportFirstUpdate();
         }
     }
 
+    private void reportFirstUpdate() {
+        if (!firstUpdateHandled.compareAndSet(false, true))
+            return;
+
+        long millis = ManagementFactory.getRuntimeMXBean().getUptime();
+        Metrics.gauge("bot_startup_first_update_seconds", () -> millis / 1000.0);
+        log.info("Першу подію оброблено через {} мс після старту JVM", millis);
+    }
+
+    /**
+     * Виконуємо один обробник; його помилка не заважає іншим
+     */
+    private void executeRoute(HandlerRouter.Route route) {
+        long started = System.nanoTime();
+        try {
+            route.handler().execute();
+        } catch (Exception e) {
+            System.out.println("onHandler ERROR: " + e.getMessage());
+            handleError(updateEvent.get(), e);
+        } finally {
+            Metrics.observe("bot_handler_duration_seconds", "handler", route.name(), System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Ключ черги для події: події одного чату мають однаковий ключ.
+     * Для подій без чату повертаємо null — вони не впорядковуються.
+     */
+    protected Object getChatKey(Update update) {
+        if (update.hasMessage() && update.getMessage().getFrom() != null)
+            return update.getMessage().getFrom().getId();
+
+        if (update.hasCallbackQuery())
+            return update.getCallbackQuery().getFrom().getId();
+
+        return null;
+    }
+
+    /**
+     * Продовжити обробку, коли future завершиться.
+     * Дія виконується в черзі поточного чату з відновленим контекстом події,
+     * тому всередині працюють getCurrentChatId(), sendTextMessage() тощо.
+     * Помилка future передається в handleError().
+     */
+    public <T> CompletableFuture<Void> onComplete(CompletableFuture<T> future, Consumer<T> action) {
+        Update update = this.updateEvent.get();
+        Object chatKey = getChatKey(update);
+
+        return future.handle((result, error) -> dispatcher.submit(chatKey, () -> {
+            try {
+                this.updateEvent.set(update);
+                if (error != null)
+                    throw error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                action.accept(result);
+            } catch (Throwable e) {
+                System.out.println("onComplete ERROR: " + e.getMessage());
+                handleError(update, e instanceof Exception ex ? ex : new RuntimeException(e));
+            } finally {
+                this.updateEvent.remove();
+            }
+        })).thenCompose(f -> f);
+    }
+
     /**
      * Якщо під час обробки події виник виняток:
      * - логуємо його
      * - надсилаємо повідомлення в чат
      */
     public void handleError(Update update, Exception exception) {
-        // Друкуємо traceback у консоль
-        log.error("Помилка під час обробки update: {}", update, exception);
+        logError(update, exception);
 
         try {
-            if (update != null && update.getMessage() != null) {
+            // Відповідаємо і на повідомлення, і на натискання кнопок (наприклад, «спробуйте пізніше»)
+            if (update != null && (update.getMessage() != null || update.hasCallbackQuery())) {
                 String message;
                 if (exception.getMessage() != null && !exception.getMessage().isEmpty()) {
                     message = exception.getMessage();
@@ -130,6 +315,15 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
         }
     }
 
+    /**
+     * Лише логуємо помилку й рахуємо її в метриках — для обробників, які самі повідомляють користувача
+     */
+    protected void logError(Update update, Throwable exception) {
+        // Друкуємо traceback у консоль
+        log.error("Помилка під час обробки update: {}", update, exception);
+        Metrics.increment("bot_errors_total", "cause", getRootCause(exception).getClass().getSimpleName());
+    }
+
     /**
      * Перевизначайте для ініціалізації бота (меню, команди, кеші тощо)
      */
@@ -141,44 +335,28 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
      * Зареєструвати обробник команди виду "/command"
      */
     public void addCommandHandler(String command, MyFunctionalInterface method) {
-        handlerList.add(() -> {
-            String messageText = getMessageText();
-            if (("/" + command).equals(messageText))
-                method.execute();
-        });
+        router.addCommand(command, method);
     }
 
     /**
      * Зареєструвати обробник кнопки за regex за callback data
      */
     public void addButtonHandler(String regex, MyFunctionalInterface method) {
-        handlerList.add(() -> {
-            String buttonKey = getButtonKey();
-            if (Pattern.matches(regex, buttonKey) && !buttonKey.isEmpty())
-                method.execute();
-        });
+        router.addButton(regex, method);
     }
 
     /**
      * Зареєструвати обробник звичайного тексту (не команди)
      */
     public void addMessageTextHandler(MyFunctionalInterface method) {
-        handlerList.add(() -> {
-            String messageText = getMessageText();
-            if (!isMessageCommand() && !messageText.isEmpty())
-                method.execute();
-        });
+        router.addMessageText(method);
     }
 
     /**
      * Зареєструвати обробник отримання фото
      */
     public void addMessagePhotoHandler(MyFunctionalInterface method) {
-        handlerList.add(() -> {
-            List<PhotoSize> photoList = getMessagePhotoList();
-            if (!isMessageCommand() && !photoList.isEmpty())
-                method.execute();
-        });
+        router.addMessagePhoto(method);
     }
 
     /**
@@ -248,64 +426,146 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
     /**
      * Надіслати текст (Markdown). Якщо «підкреслення» ламають Markdown — даємо підказку й шлемо HTML‑версією.
      */
-    public Message sendTextMessage(String text) {
+    public CompletableFuture<Message> sendTextMessage(String text) {
+        return sendTextMessage(getCurrentChatId(), text);
+    }
+
+    /**
+     * Надіслати текст у чат chatId — коли поточної події немає (наприклад, після перезапуску бота)
+     */
+    public CompletableFuture<Message> sendTextMessage(long chatId, String text) {
+        return sendTextMessage(String.valueOf(chatId), text);
+    }
+
+    private CompletableFuture<Message> sendTextMessage(String chatId, String text) {
         if (isMarkdownValid(text)) {
-            SendMessage command = createApiSendMessageCommand(String.valueOf(text));
-            return executeTelegramApiMethod(command);
+            SendMessage command = createApiSendMessageCommand(chatId, String.valueOf(text));
+            return enqueue(command.getChatId(), command);
         } else {
             var message = "Рядок '%s' є недопустимим з огляду на markdown. Скористайтеся методом sendHtmlMessage().".formatted(text);
             System.out.println(message);
-            return sendHtmlMessage(message);
+            return sendHtmlMessage(chatId, message);
         }
     }
 
     /**
      * Надіслати HTML‑текст
      */
-    public Message sendHtmlMessage(String text) {
+    public CompletableFuture<Message> sendHtmlMessage(String text) {
+        return sendHtmlMessage(getCurrentChatId(), text);
+    }
+
+    private CompletableFuture<Message> sendHtmlMessage(String chatId, String text) {
         var command = SendMessage.builder()
                 .text(text)
                 .parseMode("HTML")
-                .chatId(getCurrentChatId())
+                .chatId(chatId)
                 .build();
 
-        return executeTelegramApiMethod(command);
+        return enqueue(command.getChatId(), command);
     }
 
     /**
      * Надіслати фото + текст
      */
 
-    public Message sendPhotoMessage(String photoKey) {
+    public CompletableFuture<Message> sendPhotoMessage(String photoKey) {
         return sendPhotoTextMessage(photoKey, null);
     }
 
-    public Message sendPhotoMessage(Path photoPath) {
+    public CompletableFuture<Message> sendPhotoMessage(Path photoPath) {
         return sendPhotoTextMessage(photoPath, null);
     }
 
-    public Message sendPhotoTextMessage(String photoKey, String text) {
+    public CompletableFuture<Message> sendPhotoMessage(byte[] photo) {
+        return sendPhotoTextMessage(photo, null);
+    }
+
+    /**
+     * Надіслати фото з памʼяті (JPEG), без запису на диск
+     */
+    public CompletableFuture<Message> sendPhotoTextMessage(byte[] photo, String text) {
+        var command = SendPhoto.builder()
+                .photo(new InputFile(new ByteArrayInputStream(photo), "photo.jpg"))
+                .chatId(getCurrentChatId())
+                .caption(text)
+                .build();
+
+        // Потік читається лише один раз, тож на кожну спробу створюємо новий
+        return track(sendQueue.submit(command.getChatId(), command.getMethod(), () -> {
+            command.setPhoto(new InputFile(new ByteArrayInputStream(photo), "photo.jpg"));
+            return client.execute(command);
+        }));
+    }
+
+    public CompletableFuture<Message> sendPhotoTextMessage(String photoKey, String text) {
         Path photoPath = Path.of("images/" + photoKey + ".jpg");
         return sendPhotoTextMessage(photoPath, text);
     }
 
-    public Message sendPhotoTextMessage(Path photoPath, String text) {
+    public CompletableFuture<Message> sendPhotoTextMessage(Path photoPath, String text) {
+        String cacheKey = getFileIdCacheKey(photoPath);
         var command = createApiPhotoMessageCommand(photoPath, text);
-        return executeTelegramApiMethod(command);
+        boolean usesFileId = cacheKey != null && fileIdCache.get(cacheKey) != null;
+
+        CompletableFuture<Message> sent = sendQueue.submit(command.getChatId(), command.getMethod(), () -> client.execute(command));
+        if (usesFileId) {
+            // file_id став недійсним — забуваємо його й завантажуємо файл заново.
+            // Інші помилки (429 після всіх повторів, мережа) повторне вивантаження не виправить.
+            SendPhoto upload = createApiPhotoMessageCommand(photoPath, text, false);
+            sent = sent.exceptionallyCompose(e -> {
+                if (!isRejectedFileId(e))
+                    return CompletableFuture.failedFuture(e);
+                fileIdCache.remove(cacheKey);
+                return sendQueue.submit(upload.getChatId(), upload.getMethod(), () -> client.execute(upload));
+            });
+        }
+
+        // Запамʼятовуємо file_id, щоб наступного разу не вивантажувати картинку повторно
+        return track(sent.thenApply(message -> {
+            if (cacheKey != null && message.hasPhoto())
+                fileIdCache.put(cacheKey, message.getPhoto().getLast().getFileId());
+            return message;
+        }));
+    }
+
+    /**
+     * Telegram відхилив сам file_id: 400 "wrong file identifier", "wrong remote file identifier" тощо
+     */
+    private static boolean isRejectedFileId(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof TelegramApiRequestException request) {
+                String description = request.getApiResponse();
+                return request.getErrorCode() != null && request.getErrorCode() == 400
+                        && description != null && description.toLowerCase().contains("file");
+            }
+        }
+        return false;
     }
 
     /**
      * Надіслати відео
      */
-    public Message sendVideoMessage(Path videoPath) {
-        var command = createApiVideoMessageCommand(videoPath);
-        return executeTelegramApiMethod(command);
+    public CompletableFuture<Message> sendVideoMessage(Path videoPath) {
+        return sendVideoMessage(getCurrentChatId(), videoPath);
+    }
+
+    /**
+     * Надіслати відео в чат chatId (без поточної події)
+     */
+    public CompletableFuture<Message> sendVideoMessage(long chatId, Path videoPath) {
+        return sendVideoMessage(String.valueOf(chatId), videoPath);
+    }
+
+    private CompletableFuture<Message> sendVideoMessage(String chatId, Path videoPath) {
+        var command = createApiVideoMessageCommand(chatId, videoPath);
+        return track(sendQueue.submit(command.getChatId(), command.getMethod(), () -> client.execute(command)));
     }
 
     /**
      * Змінити текст раніше надісланого повідомлення
      */
-    public void updateMessage(Message message, String text, String checkKey, String... buttons) {
+    public CompletableFuture<?> updateMessage(Message message, String text, String checkKey, String... buttons) {
         // 1) Збір нової клавіатури/панелі кнопок
         InlineKeyboardMarkup markup = buildKeyboard(List.of(buttons), checkKey);
 
@@ -314,14 +574,7 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
 
         if (textChanged) {
             // Змінюємо текст і клавіатуру в одному запиті
-            EditMessageText edit = EditMessageText.builder()
-                    .chatId(message.getChatId())
-                    .messageId(message.getMessageId())
-                    .text(text)
-                    .replyMarkup(markup)
-                    .parseMode("Markdown")
-                    .build();
-            executeTelegramApiMethod(edit);
+            return editMessageText(message, text, "Markdown", markup);
         } else {
             // Текст той самий — оновлюємо лише клавіатуру
             EditMessageReplyMarkup editMarkup = EditMessageReplyMarkup.builder()
@@ -329,18 +582,53 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
                     .messageId(message.getMessageId())
                     .replyMarkup(markup)
                     .build();
-            executeTelegramApiMethod(editMarkup);
+            return enqueue(String.valueOf(message.getChatId()), editMarkup);
         }
     }
 
+    /**
+     * Змінити текст повідомлення (parseMode == null — простий текст, markup == null — без кнопок).
+     * Відповідь "message is not modified" — не помилка: повідомлення вже має потрібний вигляд.
+     */
+    private CompletableFuture<?> editMessageText(Message message, String text, String parseMode, InlineKeyboardMarkup markup) {
+        EditMessageText edit = EditMessageText.builder()
+                .chatId(message.getChatId())
+                .messageId(message.getMessageId())
+                .text(text)
+                .replyMarkup(markup)
+                .parseMode(parseMode)
+                .build();
+        return track(sendQueue.submit(String.valueOf(message.getChatId()), edit.getMethod(), () -> client.execute(edit))
+                .exceptionallyCompose(e -> isNotModified(e) ? CompletableFuture.completedFuture(null) : CompletableFuture.failedFuture(e)));
+    }
+
+    private static boolean isNotModified(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof TelegramApiRequestException request)
+                return request.getApiResponse() != null && request.getApiResponse().contains("message is not modified");
+        }
+        return false;
+    }
+
+    /**
+     * Надіслати заглушку й далі поступово дописувати в неї текст (див. StreamingMessage).
+     * Редагування йдуть через ту саму чергу, що й updateMessage, тож ліміти Telegram дотримано.
+     */
+    public StreamingMessage sendStreamingMessage(String placeholder) {
+        String chatId = getCurrentChatId();
+        return new StreamingMessage(sendTextMessage(chatId, placeholder),
+                (message, text, markdown) -> editMessageText(message, text, markdown && isMarkdownValid(text) ? "Markdown" : null, null),
+                text -> sendTextMessage(chatId, text));
+    }
+
     /**
      * Повідомлення з inline‑кнопками (варіант varargs: "key1","Name1","key2","Name2",...)
      */
-    public Message sendTextButtonsMessage(String text, String... buttons) {
+    public CompletableFuture<Message> sendTextButtonsMessage(String text, String... buttons) {
         return sendTextButtonsCheckMessage(text, null, buttons);
     }
 
-    public Message sendTextButtonsCheckMessage(String text, String checkKey, String... buttons) {
+    public CompletableFuture<Message> sendTextButtonsCheckMessage(String text, String checkKey, String... buttons) {
         SendMessage command = createApiSendMessageCommand(text);
 
         if (buttons.length > 0) {
@@ -348,81 +636,130 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
             command.setReplyMarkup(markup);
         }
 
-        return executeTelegramApiMethod(command);
+        return enqueue(command.getChatId(), command);
     }
 
     /**
-     * Відображаємо головне меню бота  
+     * Відображаємо головне меню бота.
+     * Якщо в чаті вже стоїть таке саме меню — жодного запиту до Telegram.
      */
-    public void showMainMenu(String... commands) {
-        ArrayList<BotCommand> list = new ArrayList<BotCommand>();
+    public CompletableFuture<Void> showMainMenu(String... commands) {
+        return applyMenu(getCurrentChatId(), toBotCommands(commands));
+    }
 
-        // перетворюємо пари ("/cmd","desc") → BotCommand
-        for (int i = 0; i < commands.length; i += 2) {
-            String key = commands[i];
-            String description = commands[i + 1];
+    /**
+     * Приховуємо головне меню бота
+     */
+    public CompletableFuture<Void> hideMainMenu() {
+        return applyMenu(getCurrentChatId(), List.of());
+    }
 
-            if (key.startsWith("/")) //remove first /
-                key = key.substring(1);
+    /**
+     * Фоново встановлюємо меню в усіх відомих чатах, де воно ще інше.
+     * Чати обробляються по одному, щоб не забирати ліміт Telegram у живих відповідей.
+     */
+    public CompletableFuture<Void> showMainMenuForAllChats(String... commands) {
+        List<BotCommand> list = toBotCommands(commands);
+        String signature = getMenuSignature(list);
 
-            BotCommand bc = new BotCommand(key, description);
-            list.add(bc);
-        }
+        return CompletableFuture.runAsync(() -> {
+            int updated = 0;
+            for (String chatId : menuState.asMap().keySet()) {
+                if (signature.equals(menuState.get(chatId)))
+                    continue;
+                try {
+                    applyMenu(chatId, list).join();
+                    updated++;
+                } catch (RuntimeException e) {
+                    log.warn("Не вдалося оновити меню в чаті {}", chatId, e);
+                }
+            }
+            if (updated > 0)
+                log.info("Меню оновлено в {} чатах", updated);
+        }, Thread.ofVirtual().name("menu-batch")::start);
+    }
+
+    /**
+     * Встановлюємо меню чату (порожній список — приховати меню), якщо воно змінилось
+     */
+    private CompletableFuture<Void> applyMenu(String chatId, List<BotCommand> list) {
+        String signature = getMenuSignature(list);
+        if (signature.equals(menuState.get(chatId)))
+            return CompletableFuture.completedFuture(null);
 
-        // Отримуємо поточний список команд для цього чату
-        var chatId = getCurrentChatId();
         BotCommandScopeChat scope = BotCommandScopeChat.builder().chatId(chatId).build();
 
-        GetMyCommands gmcs = new GetMyCommands();
-        gmcs.setScope(scope);
-        ArrayList<BotCommand> oldCommands = executeTelegramApiMethod(gmcs);
+        CompletableFuture<Boolean> commandsSet;
+        var menuButton = new SetChatMenuButton();
+        menuButton.setChatId(chatId);
+        if (list.isEmpty()) {
+            // Видаляємо команди й приховуємо кнопку меню
+            DeleteMyCommands delete = new DeleteMyCommands();
+            delete.setScope(scope);
+            commandsSet = sendQueue.submit(chatId, delete.getMethod(), () -> client.execute(delete));
+            menuButton.setMenuButton(MenuButtonDefault.builder().build());
+        } else {
+            // Встановлюємо новий список і показуємо кнопку меню
+            var set = SetMyCommands.builder()
+                    .commands(list)
+                    .scope(scope)
+                    .build();
+            commandsSet = sendQueue.submit(chatId, set.getMethod(), () -> client.execute(set));
+            menuButton.setMenuButton(MenuButtonCommands.builder().build());
+        }
 
-        // Якщо список не змінився — виходимо
-        if (oldCommands.equals(list))
-            return;
+        return track(commandsSet
+                .thenCompose(r -> sendQueue.submit(chatId, menuButton.getMethod(), () -> client.execute(menuButton)))
+                .thenRun(() -> menuState.put(chatId, signature)));
+    }
 
-        // Встановлюємо новий список
-        var cmds = SetMyCommands.builder()
-                .commands(list)
-                .scope(scope)
-                .build();
+    /**
+     * Перетворюємо пари ("/cmd","desc") → BotCommand
+     */
+    private static List<BotCommand> toBotCommands(String... commands) {
+        List<BotCommand> list = new ArrayList<>();
+        for (int i = 0; i < commands.length; i += 2) {
+            String key = commands[i];
+            String description = commands[i + 1];
 
-        executeTelegramApiMethod(cmds);
+            if (key.startsWith("/")) //remove first /
+                key = key.substring(1);
 
-        // Показуємо кнопку меню
-        var ex = new SetChatMenuButton();
-        ex.setChatId(chatId);
-        ex.setMenuButton(MenuButtonCommands.builder().build());
-        executeTelegramApiMethod(ex);
+            list.add(new BotCommand(key, description));
+        }
+        return list;
     }
 
     /**
-     * Приховуємо головне меню бота
+     * Короткий підпис меню: SHA-256 від усіх команд, тож різні меню практично не можуть збігтися
      */
-    public void hideMainMenu() {
-        // Видаляємо команди з меню
-        var chatId = getCurrentChatId();
-        BotCommandScopeChat scope = BotCommandScopeChat.builder().chatId(chatId).build();
+    private static String getMenuSignature(List<BotCommand> list) {
+        if (list.isEmpty())
+            return "hidden";
 
-        DeleteMyCommands dmds = new DeleteMyCommands();
-        dmds.setScope(scope);
-        executeTelegramApiMethod(dmds);
-
-        // Приховуємо кнопку меню
-        var ex = new SetChatMenuButton();
-        ex.setChatId(chatId);
-        ex.setMenuButton(MenuButtonDefault.builder().build());
-        executeTelegramApiMethod(ex);
+        StringBuilder text = new StringBuilder();
+        for (BotCommand command : list)
+            text.append(command.getCommand()).append('\n').append(command.getDescription()).append('\n');
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.toString().getBytes(StandardCharsets.UTF_8));
+            return "commands:" + list.size() + ":" + HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
      * Формуємо обʼєкт‑команду з надсилання тексту в поточний чат
      */
     private SendMessage createApiSendMessageCommand(String text) {
+        return createApiSendMessageCommand(getCurrentChatId(), text);
+    }
+
+    private SendMessage createApiSendMessageCommand(String chatId, String text) {
         var command = SendMessage.builder()
                 .text(text)
                 .parseMode("markdown")
-                .chatId(getCurrentChatId())
+                .chatId(chatId)
                 .build();
         return command;
     }
@@ -431,7 +768,7 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
      * Створюємо панель із кнопками, яку прикріплюємо до повідомлення.
      * Додаємо галочку для кнопки, чий key збігається з checkKey
      */
-    private InlineKeyboardMarkup buildKeyboard(List<String> buttons, String checkKey) {
+    InlineKeyboardMarkup buildKeyboard(List<String> buttons, String checkKey) {
         var keyboardRowList = new ArrayList<InlineKeyboardRow>();
 
         for (int i = 0; i < buttons.size(); i += 2) {
@@ -452,10 +789,22 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
      * Формуємо обʼєкт‑команду з надсилання фото в поточний чат
      */
     private SendPhoto createApiPhotoMessageCommand(Path photoPath, String text) {
+        return createApiPhotoMessageCommand(photoPath, text, true);
+    }
+
+    private SendPhoto createApiPhotoMessageCommand(Path photoPath, String text, boolean useFileId) {
         try {
-            photoPath = photoPath.isAbsolute() ? photoPath : root.resolve(photoPath);
+            // Статична картинка вже є на серверах Telegram — надсилаємо лише її file_id
+            String cacheKey = useFileId ? getFileIdCacheKey(photoPath) : null;
+            String fileId = cacheKey != null ? fileIdCache.get(cacheKey) : null;
+
             InputFile inputFile = new InputFile();
-            inputFile.setMedia(photoPath.toFile());
+            if (fileId != null) {
+                inputFile.setMedia(fileId);
+            } else {
+                photoPath = photoPath.isAbsolute() ? photoPath : root.resolve(photoPath);
+                inputFile.setMedia(photoPath.toFile());
+            }
 
             var command = SendPhoto.builder()
                     .photo(inputFile)
@@ -469,10 +818,26 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
         }
     }
 
+    /**
+     * Ключ кешу file_id для статичних картинок із `images/` (або null для інших файлів).
+     * До ключа додаємо час зміни файла, щоб оновлена картинка вивантажилась заново.
+     */
+    private String getFileIdCacheKey(Path photoPath) {
+        if (photoPath.isAbsolute() || !photoPath.startsWith("images"))
+            return null;
+
+        try {
+            long modified = Files.getLastModifiedTime(root.resolve(photoPath)).toMillis();
+            return photoPath.toString().replace('\\', '/') + "@" + modified;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     /**
      * Формуємо обʼєкт‑команду з надсилання відео в поточний чат
      */
-    private SendVideo createApiVideoMessageCommand(Path videoPath) {
+    private SendVideo createApiVideoMessageCommand(String chatId, Path videoPath) {
         try {
             videoPath = videoPath.isAbsolute() ? videoPath : root.resolve(videoPath);
             InputFile inputFile = new InputFile();
@@ -480,7 +845,7 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
 
             var command = SendVideo.builder()
                     .video(inputFile)
-                    .chatId(getCurrentChatId())
+                    .chatId(chatId)
                     .build();
 
             return command;
@@ -490,29 +855,36 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
     }
 
     /**
-     * Завантажуємо prompt із папки `prompts/` за його іменем
+     * Беремо prompt із папки `prompts/` за його іменем (з памʼяті, без читання файла)
      */
     public static String loadPrompt(String name) {
-        try {
-            String path = name.contains("/") ? name : "prompts/" + name + ".txt";
-            var is = ClassLoader.getSystemResourceAsStream(path);
-            return new String(is.readAllBytes());
-        } catch (IOException e) {
+        String path = name.contains("/") ? name : "prompts/" + name + ".txt";
+        String text = getTemplates().get(path);
+        if (text == null)
             throw new RuntimeException("Не вдалося завантажити AI prompt!");
-        }
+        return text;
     }
 
     /**
-     * Завантажуємо повідомлення з папки `messages/` за його іменем
+     * Беремо повідомлення з папки `messages/` за його іменем (з памʼяті, без читання файла)
      */
     public static String loadMessage(String name) {
-        try {
-            String path = name.contains("/") ? name : "messages/" + name + ".txt";
-            var is = ClassLoader.getSystemResourceAsStream(path);
-            return new String(is.readAllBytes());
-        } catch (IOException e) {
+        String path = name.contains("/") ? name : "messages/" + name + ".txt";
+        String text = getTemplates().get(path);
+        if (text == null)
             throw new RuntimeException("Не вдалося завантажити повідомлення!");
-        }
+        return text;
+    }
+
+    /**
+     * Реєстр шаблонів створюється один раз — під час першого звернення
+     */
+    public static TemplateRegistry getTemplates() {
+        return TemplatesHolder.INSTANCE;
+    }
+
+    private static class TemplatesHolder {
+        private static final TemplateRegistry INSTANCE = new TemplateRegistry(getProjectRoot());
     }
 
     /**
@@ -521,7 +893,7 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
     public void createUserDir(String userId) {
         try {
             Path userPath = Paths.get("users/" + userId);
-            Files.createDirectories(root.resolve(userPath));
+            Files.createDirectories(dataRoot.resolve(userPath));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -531,30 +903,37 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
      * Завантажуємо файл із сервера Telegram за FILE_ID і зберігаємо його на диск у PATH
      */
     public void downloadTelegramFile(String fileId, Path path) {
-        File tgFile = executeTelegramApiMethod(new GetFile(fileId));
-        String filePathOnTG = tgFile.getFilePath();
-        String downloadUrl = "https://api.telegram.org/file/bot" + token + "/" + filePathOnTG;
+        path = path.isAbsolute() ? path : root.resolve(path);
+        downloader.download(fileId, null, path);
+    }
+
+    /**
+     * Завантажуємо фото в PATH; уже отримане раніше фото (той самий file_unique_id) береться з диска
+     */
+    public void downloadTelegramFile(PhotoSize photo, Path path) {
+        path = path.isAbsolute() ? path : root.resolve(path);
+        downloader.download(photo.getFileId(), photo.getFileUniqueId(), path);
+    }
 
-        downloadFile(downloadUrl, path);
+    /**
+     * Завантажуємо фото в памʼять; уже отримане раніше фото береться з локального сховища
+     */
+    public byte[] downloadTelegramPhoto(PhotoSize photo) {
+        return downloader.downloadBytes(photo.getFileId(), photo.getFileUniqueId());
     }
 
     /**
      * Завантажуємо файл за URL і зберігаємо його на диск у PATH
      */
     public void downloadFile(String url, Path path) {
-        try {
-            path = path.isAbsolute() ? path : root.resolve(path);
-            InputStream is = new URL(url).openStream();
-            Files.copy(is, path, StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        path = path.isAbsolute() ? path : root.resolve(path);
+        downloader.downloadUrl(url, path);
     }
 
     /**
      * Перевіряємо, що текст — валідний Telegram Markdown
      */
-    private static boolean isMarkdownValid(String text) {
+    static boolean isMarkdownValid(String text) {
         long underscoreCount = text != null ? text.chars().filter(c -> c == '_').count() : 0;
         return underscoreCount % 2 == 0;
     }
@@ -562,28 +941,34 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
 
     /* Обгортки над client.execute(...) */
 
-    private <T extends Serializable, Method extends BotApiMethod<T>> T executeTelegramApiMethod(Method method) {
-        try {
-            return client.execute(method);
-        } catch (TelegramApiException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Поставити запит у чергу вихідних повідомлень його чату
+     */
+    private <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> enqueue(String chatId, Method method) {
+        return track(sendQueue.submit(chatId, method.getMethod(), () -> client.execute(method)));
     }
 
-    private Message executeTelegramApiMethod(SendPhoto message) {
-        try {
-            return client.execute(message);
-        } catch (TelegramApiException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Обробник уже повернувся, тож помилку відправлення лише логуємо й рахуємо
+     */
+    private <T> CompletableFuture<T> track(CompletableFuture<T> sent) {
+        sent.whenComplete((r, e) -> {
+            if (e != null) {
+                log.error("Не вдалося надіслати повідомлення в Telegram", e);
+                Metrics.increment("bot_errors_total", "cause", getRootCause(e).getClass().getSimpleName());
+            }
+        });
+        return sent;
     }
 
-    private Message executeTelegramApiMethod(SendVideo message) {
-        try {
-            return client.execute(message);
-        } catch (TelegramApiException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Найглибша причина винятку (RuntimeException часто лише обгортка)
+     */
+    private static Throwable getRootCause(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause)
+            cause = cause.getCause();
+        return cause;
     }
 
     @FunctionalInterface
@@ -594,8 +979,7 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
     public static Path getProjectRoot() {
         try {
             // Пробуємо прочитати PROJECT_ROOT з .env
-            Dotenv env = Dotenv.configure().ignoreIfMissing().load();
-            String projectRoot = env.get("PROJECT_ROOT");
+            String projectRoot = AppConfig.get().get("PROJECT_ROOT");
             if (projectRoot != null)
                 return Path.of(projectRoot);
 
@@ -607,4 +991,15 @@ public class SimpleTelegramBot implements LongPollingSingleThreadUpdateConsumer
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Папка зі станом бота (data/, users/, cache/). За замовчуванням — корінь проєкту.
+     * DATA_DIR (абсолютний чи відносно кореня) дає окремий стан кожному з кількох екземплярів,
+     * запущених з однієї папки, — наприклад, робочим вузлам локального кластера.
+     */
+    public static Path getDataRoot() {
+        Path projectRoot = getProjectRoot();
+        String dataDir = AppConfig.get().get("DATA_DIR");
+        return dataDir == null || dataDir.isBlank() ? projectRoot : projectRoot.resolve(dataDir).toAbsolutePath().normalize();
+    }
 }
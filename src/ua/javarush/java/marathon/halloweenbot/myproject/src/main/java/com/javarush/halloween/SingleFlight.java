@@ -0,0 +1,49 @@
+package com.javarush.halloween;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Об'єднання однакових запитів: поки задача з ключем key виконується,
+ * повторні виклики з тим самим ключем отримують її результат, а не запускають нову.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Запустити задачу або приєднатися до вже запущеної з тим самим ключем
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> task) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null)
+            return existing;
+
+        try {
+            task.get().whenComplete((result, error) -> {
+                // Спершу прибираємо ключ, щоб наступний запит після завершення пішов заново
+                inFlight.remove(key, created);
+                if (error != null)
+                    created.completeExceptionally(error);
+                else
+                    created.complete(result);
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    /**
+     * Чи виконується зараз задача з таким ключем
+     */
+    public boolean isRunning(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    public int size() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,122 @@
+package com.javarush.halloween;
+
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Повідомлення, текст якого дописується поступово (потокова відповідь ШІ).
+ * Часткові відповіді приходять часто, а редагуємо повідомлення не частіше за MIN_EDIT_INTERVAL_MILLIS:
+ * між редагуваннями лишається лише найсвіжіший текст, а наступне редагування чекає завершення попереднього.
+ */
+public class StreamingMessage {
+    // Telegram дозволяє приблизно одне повідомлення/редагування на секунду в чаті
+    private static final long MIN_EDIT_INTERVAL_MILLIS = 1_000;
+    // Максимальна довжина тексту одного повідомлення Telegram
+    static final int MAX_TEXT_LENGTH = 4096;
+
+    /**
+     * Редагування тексту повідомлення; markdown = false для проміжних (можливо, «незакритих») фрагментів
+     */
+    @FunctionalInterface
+    public interface Editor {
+        CompletableFuture<?> edit(Message message, String text, boolean markdown);
+    }
+
+    private final CompletableFuture<Message> message;
+    private final Editor editor;
+    private final Consumer<String> sendExtra;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private String pendingText;
+    private String shownText;
+    private boolean finished;
+    private boolean editing;
+    private boolean flushScheduled;
+    private long lastEditMillis;
+
+    /**
+     * message — вже надіслане повідомлення-заглушка; sendExtra надсилає текст, що не вмістився в одне повідомлення
+     */
+    public StreamingMessage(CompletableFuture<Message> message, Editor editor, Consumer<String> sendExtra) {
+        this.message = message;
+        this.editor = editor;
+        this.sendExtra = sendExtra;
+    }
+
+    /**
+     * Новий (накопичений) текст відповіді
+     */
+    public synchronized void update(String text) {
+        if (finished || text == null || text.isBlank())
+            return;
+        pendingText = text;
+        flush();
+    }
+
+    /**
+     * Остаточний текст: показуємо його з Markdown, а те, що не влізло, — окремими повідомленнями
+     */
+    public synchronized void finish(String text) {
+        if (finished)
+            return;
+        finished = true;
+        pendingText = text == null || text.isBlank() ? "🤷 Відповіді немає." : text;
+        flush();
+    }
+
+    /**
+     * Завершиться, коли остаточний текст буде показано
+     */
+    public CompletableFuture<Void> getDone() {
+        return done;
+    }
+
+    private synchronized void flush() {
+        if (editing || flushScheduled || pendingText == null)
+            return;
+
+        long wait = lastEditMillis + MIN_EDIT_INTERVAL_MILLIS - System.currentTimeMillis();
+        if (wait > 0) {
+            flushScheduled = true;
+            CompletableFuture.runAsync(() -> {
+                synchronized (this) {
+                    flushScheduled = false;
+                    flush();
+                }
+            }, CompletableFuture.delayedExecutor(wait, TimeUnit.MILLISECONDS));
+            return;
+        }
+
+        String text = pendingText;
+        boolean last = finished;
+        pendingText = null;
+
+        String head = text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+        if (head.equals(shownText) && !last)
+            return;
+
+        editing = true;
+        message.thenCompose(m -> last
+                        // Markdown міг зламатися на недописаному фрагменті — тоді показуємо простим текстом
+                        ? editor.edit(m, head, true).exceptionallyCompose(e -> editor.edit(m, head, false))
+                        : editor.edit(m, head, false))
+                .whenComplete((r, e) -> {
+                    synchronized (this) {
+                        editing = false;
+                        lastEditMillis = System.currentTimeMillis();
+                        if (e == null)
+                            shownText = head;
+                        if (!last) {
+                            flush();
+                            return;
+                        }
+                    }
+                    for (int from = MAX_TEXT_LENGTH; from < text.length(); from += MAX_TEXT_LENGTH)
+                        sendExtra.accept(text.substring(from, Math.min(text.length(), from + MAX_TEXT_LENGTH)));
+                    done.complete(null);
+                });
+    }
+}
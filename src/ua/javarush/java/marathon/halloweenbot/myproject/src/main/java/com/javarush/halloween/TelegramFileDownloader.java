@@ -0,0 +1,256 @@
+package com.javarush.halloween;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.telegram.telegrambots.meta.api.methods.GetFile;
+import org.telegram.telegrambots.meta.api.objects.File;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Завантаження файлів із серверів Telegram.
+ * - використовує спільний OkHttpClient (пул зʼєднань, тайм-аути);
+ * - пише потік одразу на диск і обриває завантаження, якщо файл завеликий;
+ * - памʼятає вже завантажені файли за file_unique_id, тож повторне фото
+ *   не потребує ні запиту GetFile, ні передачі даних;
+ * - тримає сховище в межах cacheBytes, видаляючи файли, які найдовше не використовувались.
+ */
+public class TelegramFileDownloader {
+    private static final Logger log = LoggerFactory.getLogger(TelegramFileDownloader.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Прибираємо із запасом, щоб не сканувати папку після кожного нового файла
+    private static final double TRIM_TARGET = 0.8;
+    // Скільки разів повторюємо, якщо файл сховища видалили між пошуком і читанням
+    private static final int READ_ATTEMPTS = 3;
+
+    private final TelegramClient telegramClient;
+    private final OkHttpClient httpClient;
+    private final String fileUrl;
+    private final long maxBytes;
+    private final long cacheBytes;
+
+    // Файли зберігаються під іменем file_unique_id, час зміни — час останнього використання
+    private final Path storeDir;
+    // Поточний розмір сховища; -1 — ще не рахували
+    private long storedBytes = -1;
+
+    public TelegramFileDownloader(TelegramClient telegramClient, OkHttpClient httpClient, String fileUrl, Path root,
+                                  long maxBytes, long cacheBytes) {
+        this.telegramClient = telegramClient;
+        this.httpClient = httpClient;
+        this.fileUrl = fileUrl;
+        this.maxBytes = maxBytes;
+        this.cacheBytes = cacheBytes;
+        this.storeDir = root.resolve("cache/downloads");
+    }
+
+    /**
+     * Завантажуємо файл за FILE_ID і зберігаємо його в target.
+     * Якщо fileUniqueId відомий — файл береться з локального сховища.
+     */
+    public void download(String fileId, String fileUniqueId, Path target) {
+        readStored(fileId, fileUniqueId, stored -> {
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            return Files.copy(stored, target, StandardCopyOption.REPLACE_EXISTING);
+        });
+    }
+
+    /**
+     * Завантажуємо файл за FILE_ID і повертаємо його вміст
+     */
+    public byte[] downloadBytes(String fileId, String fileUniqueId) {
+        return readStored(fileId, fileUniqueId, Files::readAllBytes);
+    }
+
+    /**
+     * Завантажуємо файл за URL і зберігаємо його на диск у target.
+     * Кожне завантаження пише у власний тимчасовий файл, тож паралельні завантаження
+     * того самого файла не заважають одне одному: виграє останнє атомарне перейменування.
+     */
+    public void downloadUrl(String url, Path target) {
+        Path tmp = null;
+        try {
+            Path dir = target.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            tmp = Files.createTempFile(dir, target.getFileName().toString(), ".part");
+            streamToFile(url, tmp);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    log.warn("Не вдалося видалити {}", tmp, e);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface StoredReader<T> {
+        T read(Path stored) throws IOException;
+    }
+
+    /**
+     * Беремо файл зі сховища (або завантажуємо) і читаємо його.
+     * Паралельне прибирання сховища може видалити файл між пошуком і читанням —
+     * тоді просто завантажуємо його ще раз.
+     */
+    private <T> T readStored(String fileId, String fileUniqueId, StoredReader<T> reader) {
+        try {
+            for (int attempt = 1; ; attempt++) {
+                Path stored = fileUniqueId != null ? findStored(fileUniqueId) : null;
+                if (stored == null) {
+                    stored = fetch(fileId, fileUniqueId);
+                }
+                try {
+                    return reader.read(stored);
+                } catch (NoSuchFileException e) {
+                    if (attempt >= READ_ATTEMPTS)
+                        throw e;
+                    log.debug("Файл {} видалили зі сховища під час читання, завантажуємо ще раз", stored);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Path findStored(String fileUniqueId) {
+        Path stored = storeDir.resolve(fileUniqueId);
+        try {
+            // Оновлюємо час використання — за ним вирішуємо, що видаляти першим
+            Files.setLastModifiedTime(stored, FileTime.fromMillis(System.currentTimeMillis()));
+            return stored;
+        } catch (IOException e) {
+            // Файла немає або його щойно видалили — завантажимо заново
+            return null;
+        }
+    }
+
+    private Path fetch(String fileId, String fileUniqueId) throws IOException {
+        File tgFile;
+        try {
+            tgFile = telegramClient.execute(new GetFile(fileId));
+        } catch (TelegramApiException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (tgFile.getFileSize() != null && tgFile.getFileSize() > maxBytes)
+            throw new RuntimeException("Файл завеликий: " + tgFile.getFileSize() + " байт (максимум " + maxBytes + ")");
+
+        String downloadUrl = fileUrl + "/" + tgFile.getFilePath();
+
+        Files.createDirectories(storeDir);
+        String name = fileUniqueId != null ? fileUniqueId : tgFile.getFileUniqueId();
+        Path stored = storeDir.resolve(name);
+        downloadUrl(downloadUrl, stored);
+
+        trim(stored, Files.size(stored));
+        return stored;
+    }
+
+    /**
+     * Враховуємо новий файл і, якщо сховище переповнене, видаляємо найстаріші файли.
+     * Щойно завантажений keep не чіпаємо — його зараз копіюють до користувача.
+     */
+    private synchronized void trim(Path keep, long added) {
+        if (storedBytes < 0) {
+            storedBytes = listStored().stream().mapToLong(Stored::size).sum();
+        } else {
+            storedBytes += added;
+        }
+        if (storedBytes <= cacheBytes)
+            return;
+
+        List<Stored> files = listStored();
+        files.sort(Comparator.comparing(Stored::lastUsed));
+        storedBytes = files.stream().mapToLong(Stored::size).sum();
+
+        long target = (long) (cacheBytes * TRIM_TARGET);
+        for (Stored file : files) {
+            if (storedBytes <= target)
+                break;
+            if (file.path().equals(keep))
+                continue;
+            try {
+                Files.deleteIfExists(file.path());
+                storedBytes -= file.size();
+            } catch (IOException e) {
+                log.warn("Не вдалося видалити {}", file.path(), e);
+            }
+        }
+    }
+
+    private List<Stored> listStored() {
+        try (Stream<Path> files = Files.list(storeDir)) {
+            return files.filter(path -> !path.getFileName().toString().endsWith(".part"))
+                    .map(Stored::of)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    private record Stored(Path path, long size, FileTime lastUsed) {
+        static Stored of(Path path) {
+            try {
+                return new Stored(path, Files.size(path), Files.getLastModifiedTime(path));
+            } catch (IOException e) {
+                // файл видалили паралельно
+                return null;
+            }
+        }
+    }
+
+    private void streamToFile(String url, Path target) throws IOException {
+        Request request = new Request.Builder().url(url).build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null)
+                throw new IOException("Не вдалося завантажити файл: HTTP " + response.code());
+
+            if (body.contentLength() > maxBytes)
+                throw new IOException("Файл завеликий: " + body.contentLength() + " байт (максимум " + maxBytes + ")");
+
+            // Копіюємо потоком і рахуємо байти — сервер може не повідомити розмір заздалегідь
+            try (InputStream in = body.byteStream(); OutputStream out = Files.newOutputStream(target)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long total = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    total += read;
+                    if (total > maxBytes)
+                        throw new IOException("Файл завеликий: понад " + maxBytes + " байт");
+                    out.write(buffer, 0, read);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+}
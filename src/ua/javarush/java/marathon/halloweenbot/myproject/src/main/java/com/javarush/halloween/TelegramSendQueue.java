@@ -0,0 +1,124 @@
+package com.javarush.halloween;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Черга вихідних запитів до Telegram.
+ * Повідомлення одного чату йдуть строго по черзі й не частіше ~1 на секунду,
+ * усі чати разом — не частіше ~30 на секунду. На відповідь 429 чекаємо retry_after і повторюємо.
+ * Обробник лише ставить запит у чергу й одразу повертається.
+ */
+public class TelegramSendQueue implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(TelegramSendQueue.class);
+
+    // Telegram допускає короткі «сплески», тому кошик чату трохи більший за 1
+    private static final double CHAT_BURST = 3;
+    private static final double CHAT_PER_SECOND = 1;
+    private static final double GLOBAL_PER_SECOND = 30;
+    private static final int MAX_ATTEMPTS = 5;
+    // Повні кошики (чат давно нічого не отримував) прибираємо у фоні, щоб мапа не росла
+    private static final long CLEANUP_PERIOD_SECONDS = 60;
+
+    /**
+     * Виклик Telegram Bot API (client.execute(...))
+     */
+    @FunctionalInterface
+    public interface TelegramCall<T> {
+        T execute() throws TelegramApiException;
+    }
+
+    // Віртуальні потоки: очікування ліміту чи retry_after нічого не коштує
+    private final KeyedOrderedExecutor executor = new KeyedOrderedExecutor();
+    private final TokenBucket globalBucket = new TokenBucket(GLOBAL_PER_SECOND, GLOBAL_PER_SECOND);
+    private final Map<String, TokenBucket> chatBuckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService cleaner;
+
+    public TelegramSendQueue() {
+        Metrics.gauge("bot_telegram_send_queue_depth", executor::getPendingCount);
+
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "send-queue-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(() -> chatBuckets.values().removeIf(TokenBucket::isFull),
+                CLEANUP_PERIOD_SECONDS, CLEANUP_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Поставити запит method у чергу чату chatId.
+     * Команду з потоками (InputFile із InputStream) треба створювати всередині call — її можуть повторити.
+     */
+    public <T> CompletableFuture<T> submit(String chatId, String method, TelegramCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.submit(chatId, () -> {
+            try {
+                result.complete(send(chatId, method, call));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private <T> T send(String chatId, String method, TelegramCall<T> call) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            acquire(chatId);
+
+            long started = System.nanoTime();
+            try {
+                return call.execute();
+            } catch (TelegramApiRequestException e) {
+                Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                if (e.getErrorCode() == null || e.getErrorCode() != 429 || retryAfter == null || attempt >= MAX_ATTEMPTS)
+                    throw new RuntimeException(e);
+
+                // Telegram просить почекати — чекаємо саме в черзі цього чату, інші чати не блокуються
+                Metrics.increment("bot_telegram_throttled_total", "method", method);
+                log.warn("Telegram 429 для чату {}: повтор через {} с", chatId, retryAfter);
+                TimeUnit.SECONDS.sleep(retryAfter);
+            } catch (TelegramApiException e) {
+                throw new RuntimeException(e);
+            } finally {
+                Metrics.observe("bot_telegram_api_duration_seconds", "method", method, System.nanoTime() - started);
+            }
+        }
+    }
+
+    /**
+     * Чекаємо, доки дозволять і ліміт чату, і загальний ліміт
+     */
+    private void acquire(String chatId) throws InterruptedException {
+        TokenBucket chatBucket = chatId == null ? null
+                : chatBuckets.computeIfAbsent(chatId, k -> new TokenBucket(CHAT_BURST, CHAT_PER_SECOND));
+
+        long wait;
+        while (chatBucket != null && (wait = chatBucket.tryConsume(1)) > 0)
+            TimeUnit.NANOSECONDS.sleep(wait);
+        while ((wait = globalBucket.tryConsume(1)) > 0)
+            TimeUnit.NANOSECONDS.sleep(wait);
+    }
+
+    public int getPendingCount() {
+        return executor.getPendingCount();
+    }
+
+    /**
+     * Дочекатися відправлення вже прийнятих повідомлень
+     */
+    @Override
+    public void close() {
+        executor.shutdown(30, TimeUnit.SECONDS);
+        cleaner.shutdownNow();
+    }
+}
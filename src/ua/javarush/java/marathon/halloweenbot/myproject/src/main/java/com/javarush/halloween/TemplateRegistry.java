@@ -0,0 +1,142 @@
+package com.javarush.halloween;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Реєстр текстових шаблонів із папок `prompts/` і `messages/`.
+ * Усі файли читаються один раз під час старту в незмінну мапу,
+ * тому пошук шаблону не робить жодного вводу-виводу.
+ * У режимі hot-reload мапа атомарно підміняється після зміни файлів на диску.
+ */
+public class TemplateRegistry {
+    private static final Logger log = LoggerFactory.getLogger(TemplateRegistry.class);
+    private static final String[] FOLDERS = {"prompts", "messages"};
+
+    private final Path root;
+    private volatile Map<String, String> templates;
+    // Ресурси з classpath (і їхня відсутність) не змінюються, тож кешуємо окремо від мапи, яку підміняє hot-reload
+    private final Map<String, Optional<String>> classpathTemplates = new ConcurrentHashMap<>();
+    private volatile WatchService watchService;
+
+    public TemplateRegistry(Path root) {
+        this.root = root;
+        this.templates = loadAll();
+    }
+
+    /**
+     * Шаблон за шляхом виду "prompts/edit.txt"
+     */
+    public String get(String path) {
+        String text = templates.get(path);
+        if (text != null)
+            return text;
+
+        // Ресурсу немає в папці (наприклад, запуск із jar) — читаємо з classpath один раз і кешуємо, навіть промах
+        return classpathTemplates
+                .computeIfAbsent(path, key -> Optional.ofNullable(loadFromClasspath(key)))
+                .orElse(null);
+    }
+
+    /**
+     * Кількість завантажених шаблонів
+     */
+    public int size() {
+        return templates.size();
+    }
+
+    /**
+     * Стежимо за папками шаблонів і перечитуємо їх після кожної зміни
+     */
+    public synchronized void startHotReload() {
+        if (watchService != null)
+            return;
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (String folder : FOLDERS) {
+                Path dir = root.resolve(folder);
+                if (Files.isDirectory(dir))
+                    dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Не вдалося увімкнути hot-reload шаблонів!", e);
+        }
+
+        Thread.ofPlatform().daemon().name("template-reload").start(this::watchLoop);
+        log.info("Hot-reload шаблонів увімкнено: {}", root);
+    }
+
+    public synchronized void stopHotReload() {
+        try {
+            if (watchService != null)
+                watchService.close();
+        } catch (IOException e) {
+            log.warn("Не вдалося зупинити hot-reload шаблонів", e);
+        }
+        watchService = null;
+    }
+
+    private void watchLoop() {
+        WatchService service = watchService;
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                key.pollEvents();
+                key.reset();
+
+                // Нова мапа будується збоку, а читачі бачать або стару, або нову — без блокувань
+                templates = loadAll();
+                log.info("Шаблони перечитано: {}", templates.size());
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // зупинка hot-reload
+        }
+    }
+
+    private Map<String, String> loadAll() {
+        var result = new HashMap<String, String>();
+        for (String folder : FOLDERS) {
+            Path dir = root.resolve(folder);
+            if (!Files.isDirectory(dir))
+                continue;
+
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.filter(Files::isRegularFile).toList()) {
+                    String key = folder + "/" + dir.relativize(file).toString().replace('\\', '/');
+                    result.put(key, Files.readString(file, StandardCharsets.UTF_8));
+                }
+            } catch (IOException e) {
+                log.warn("Не вдалося прочитати шаблони з {}", dir, e);
+            }
+        }
+        return Map.copyOf(result);
+    }
+
+    private static String loadFromClasspath(String path) {
+        try (InputStream is = ClassLoader.getSystemResourceAsStream(path)) {
+            return is != null ? new String(is.readAllBytes(), StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.javarush.halloween;
+
+/**
+ * Класичний token bucket: до capacity токенів, поповнення зі швидкістю refillPerSecond.
+ * Запит вартістю cost проходить, якщо в кошику достатньо токенів.
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double refillPerNano;
+
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1e9;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Забрати cost токенів. Повертає 0, якщо вдалося,
+     * або скільки наносекунд треба зачекати, доки токенів вистачить.
+     */
+    public synchronized long tryConsume(double cost) {
+        refill();
+        if (tokens >= cost) {
+            tokens -= cost;
+            return 0;
+        }
+        return (long) Math.ceil((Math.min(cost, capacity) - tokens) / refillPerNano);
+    }
+
+    /**
+     * Повернути токени (якщо запит усе ж не відбувся)
+     */
+    public synchronized void refund(double cost) {
+        tokens = Math.min(capacity, tokens + cost);
+    }
+
+    /**
+     * Кошик повний — ним давно не користувалися
+     */
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= capacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,69 @@
+package com.javarush.halloween;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Стан діалогу одного чату: режим роботи, вибраний стиль картинки,
+ * поточне робоче фото та фото для об'єднання (як байти в памʼяті).
+ * Події одного чату обробляються по черзі, тому сесію не потрібно синхронізувати.
+ */
+public class UserSession {
+    private final String chatId;
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    private HalloweenBoltApp.AppMode mode;
+    private String imageType = "create_anime";
+    private final List<byte[]> imageList = new ArrayList<>();
+    private volatile byte[] photo;
+
+    public UserSession(String chatId) {
+        this.chatId = chatId;
+    }
+
+    public String getChatId() {
+        return chatId;
+    }
+
+    public HalloweenBoltApp.AppMode getMode() {
+        return mode;
+    }
+
+    public void setMode(HalloweenBoltApp.AppMode mode) {
+        this.mode = mode;
+    }
+
+    public String getImageType() {
+        return imageType;
+    }
+
+    public void setImageType(String imageType) {
+        this.imageType = imageType;
+    }
+
+    public List<byte[]> getImageList() {
+        return imageList;
+    }
+
+    /**
+     * Робоче фото (JPEG) або null, якщо його ще немає в памʼяті
+     */
+    public byte[] getPhoto() {
+        return photo;
+    }
+
+    public void setPhoto(byte[] photo) {
+        this.photo = photo;
+    }
+
+    /**
+     * Час останнього звернення до сесії (для витіснення неактивних)
+     */
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+}
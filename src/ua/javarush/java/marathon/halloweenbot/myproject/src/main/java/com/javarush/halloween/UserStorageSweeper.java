@@ -0,0 +1,261 @@
+package com.javarush.halloween;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Прибирання папки users/ за квотами.
+ * - у кожного файла зберігаємо не більше maxVersions перейменованих копій (photo_2025-10-31_12-00-00.jpg);
+ * - якщо користувач перевищив свою квоту — видаляємо спершу старі копії, а поточні файли
+ *   (photo.jpg, photo2.jpg, ...) — лише коли користувач неактивний, бо ними ще користується сесія;
+ * - якщо вся папка перевищила загальну квоту — видаляємо папки користувачів, до яких давно не зверталися (LRU).
+ * Розміри тримаємо в індексі: після старту перечитується лише папка користувача, у якого щось записали.
+ */
+public class UserStorageSweeper {
+    private static final Logger log = LoggerFactory.getLogger(UserStorageSweeper.class);
+    // Перейменована копія: <назва>_yyyy-MM-dd_HH-mm-ss<.розширення>
+    private static final Pattern ROTATED = Pattern.compile("^(.+)_\\d{4}-\\d{2}-\\d{2}_\\d{2}-\\d{2}-\\d{2}(\\.[^.]*)?$");
+    // Папки активних користувачів не чіпаємо: туди саме можуть писати
+    private static final long ACTIVE_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Запис індексу: розмір папки користувача та час останнього доступу
+     */
+    private static final class Usage {
+        volatile long bytes;
+        volatile long lastAccess;
+    }
+
+    private final Path usersDir;
+    private final long globalQuotaBytes;
+    private final long userQuotaBytes;
+    private final int maxVersions;
+
+    private final Map<String, Usage> index = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final ScheduledExecutorService sweeper;
+
+    public UserStorageSweeper(Path usersDir, long globalQuotaBytes, long userQuotaBytes, int maxVersions) {
+        this.usersDir = usersDir;
+        this.globalQuotaBytes = globalQuotaBytes;
+        this.userQuotaBytes = userQuotaBytes;
+        this.maxVersions = maxVersions;
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "storage-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Metrics.gauge("bot_user_storage_bytes", totalBytes::get);
+    }
+
+    /**
+     * Запускаємо побудову індексу й прибирання. Окремо від конструктора, щоб фоновий потік
+     * не побачив напівстворений обʼєкт; викликається один раз
+     */
+    public UserStorageSweeper start() {
+        // Повний обхід — лише один раз, у фоні після старту
+        sweeper.execute(this::buildIndex);
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+        return this;
+    }
+
+    /**
+     * Користувач щось зробив — оновлюємо час доступу (для LRU)
+     */
+    public void touch(String userId) {
+        index.computeIfAbsent(userId, k -> new Usage()).lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * У папці користувача змінилися файли — перерахуємо її під час наступного прибирання
+     */
+    public void markDirty(String userId) {
+        touch(userId);
+        dirty.add(userId);
+    }
+
+    /**
+     * Загальний обсяг папки users/ за індексом
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    private void buildIndex() {
+        if (!Files.isDirectory(usersDir))
+            return;
+
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(usersDir, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                String userId = dir.getFileName().toString();
+                Usage usage = index.computeIfAbsent(userId, k -> new Usage());
+                // Після перезапуску часу доступу не знаємо — беремо час зміни папки
+                if (usage.lastAccess == 0)
+                    usage.lastAccess = Files.getLastModifiedTime(dir).toMillis();
+                dirty.add(userId);
+            }
+        } catch (IOException e) {
+            log.warn("Не вдалося прочитати {}", usersDir, e);
+        }
+        sweep();
+    }
+
+    /**
+     * Перераховуємо змінені папки, застосовуємо квоти користувачів, а потім — загальну квоту
+     */
+    void sweep() {
+        try {
+            for (String userId : List.copyOf(dirty)) {
+                dirty.remove(userId);
+                sweepUser(userId);
+            }
+            enforceGlobalQuota();
+        } catch (RuntimeException e) {
+            log.warn("Помилка під час прибирання {}", usersDir, e);
+        }
+    }
+
+    private void sweepUser(String userId) {
+        Path dir = usersDir.resolve(userId);
+        List<FileInfo> files = listFiles(dir);
+
+        // 1) Обмежуємо кількість перейменованих копій кожного файла
+        Map<String, List<FileInfo>> versions = new HashMap<>();
+        for (FileInfo file : files) {
+            Matcher m = ROTATED.matcher(file.path.getFileName().toString());
+            if (m.matches())
+                versions.computeIfAbsent(m.group(1) + (m.group(2) != null ? m.group(2) : ""), k -> new ArrayList<>()).add(file);
+        }
+        for (List<FileInfo> copies : versions.values()) {
+            copies.sort(Comparator.comparingLong(FileInfo::modified).reversed());
+            for (FileInfo old : copies.subList(Math.min(maxVersions, copies.size()), copies.size()))
+                delete(old, files);
+        }
+
+        // 2) Квота користувача: спершу старі копії — від найстаріших
+        long bytes = files.stream().mapToLong(FileInfo::size).sum();
+        if (bytes > userQuotaBytes)
+            bytes = deleteOldest(files, bytes, true);
+
+        // 3) Поточні файли потрібні сесії (робоче фото, фото для об'єднання) — чіпаємо їх лише в неактивних
+        if (bytes > userQuotaBytes) {
+            if (isActive(userId))
+                dirty.add(userId);
+            else
+                deleteOldest(files, bytes, false);
+        }
+
+        updateUsage(userId, files.stream().mapToLong(FileInfo::size).sum());
+    }
+
+    /**
+     * Видаляємо файли одного виду (копії чи поточні) від найстаріших, доки не вкладемося в квоту
+     */
+    private long deleteOldest(List<FileInfo> files, long bytes, boolean rotated) {
+        List<FileInfo> candidates = files.stream()
+                .filter(f -> ROTATED.matcher(f.path.getFileName().toString()).matches() == rotated)
+                .sorted(Comparator.comparingLong(FileInfo::modified))
+                .toList();
+        for (FileInfo file : candidates) {
+            if (bytes <= userQuotaBytes)
+                break;
+            if (delete(file, files))
+                bytes -= file.size;
+        }
+        return bytes;
+    }
+
+    private boolean isActive(String userId) {
+        Usage usage = index.get(userId);
+        return usage != null && usage.lastAccess >= System.currentTimeMillis() - ACTIVE_GRACE_MILLIS;
+    }
+
+    private void enforceGlobalQuota() {
+        if (totalBytes.get() <= globalQuotaBytes)
+            return;
+
+        long activeSince = System.currentTimeMillis() - ACTIVE_GRACE_MILLIS;
+        List<Map.Entry<String, Usage>> lru = index.entrySet().stream()
+                .filter(e -> e.getValue().bytes > 0 && e.getValue().lastAccess < activeSince)
+                .sorted(Comparator.comparingLong(e -> e.getValue().lastAccess))
+                .toList();
+
+        for (Map.Entry<String, Usage> entry : lru) {
+            if (totalBytes.get() <= globalQuotaBytes)
+                break;
+
+            String userId = entry.getKey();
+            List<FileInfo> files = listFiles(usersDir.resolve(userId));
+            for (FileInfo file : List.copyOf(files))
+                delete(file, files);
+            updateUsage(userId, files.stream().mapToLong(FileInfo::size).sum());
+            log.info("Папку користувача {} очищено: перевищено загальну квоту users/", userId);
+        }
+    }
+
+    private void updateUsage(String userId, long bytes) {
+        Usage usage = index.computeIfAbsent(userId, k -> new Usage());
+        totalBytes.addAndGet(bytes - usage.bytes);
+        usage.bytes = bytes;
+    }
+
+    private record FileInfo(Path path, long size, long modified) {
+    }
+
+    private static List<FileInfo> listFiles(Path dir) {
+        List<FileInfo> files = new ArrayList<>();
+        if (!Files.isDirectory(dir))
+            return files;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                // Тимчасові файли ще дописуються — їх не рахуємо й не видаляємо
+                if (attrs.isRegularFile() && !path.getFileName().toString().endsWith(".tmp"))
+                    files.add(new FileInfo(path, attrs.size(), attrs.lastModifiedTime().toMillis()));
+            }
+        } catch (IOException e) {
+            log.warn("Не вдалося прочитати {}", dir, e);
+        }
+        return files;
+    }
+
+    private static boolean delete(FileInfo file, List<FileInfo> files) {
+        try {
+            Files.deleteIfExists(file.path);
+            files.remove(file);
+            Metrics.increment("bot_user_storage_evicted_total", "kind",
+                    ROTATED.matcher(file.path.getFileName().toString()).matches() ? "version" : "file");
+            return true;
+        } catch (IOException e) {
+            log.warn("Не вдалося видалити {}", file.path, e);
+            return false;
+        }
+    }
+
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+}
@@ -0,0 +1,55 @@
+package com.javarush.halloween;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Журнал відео, що зараз генеруються в Veo.
+ * Операція живе на боці Google і після перезапуску бота, тож за журналом
+ * ми продовжуємо її опитувати й надсилаємо готове відео користувачу.
+ */
+public class VideoJobJournal {
+
+    /**
+     * Одна генерація: чат, імʼя операції Veo, куди зберегти відео, коли почали, ключ кешу
+     */
+    public record Job(String chatId, String operationName, String outputPath, long startedMillis, String cacheKey) {
+    }
+
+    private final PropertiesStore store;
+
+    public VideoJobJournal(Path file) {
+        this.store = new PropertiesStore(file);
+    }
+
+    /**
+     * Записуємо одразу на диск: процес може зупинитися будь-якої миті
+     */
+    public void add(Job job) {
+        store.put(job.operationName(), job.chatId() + "|" + job.startedMillis() + "|" + job.cacheKey() + "|" + job.outputPath());
+        store.flush();
+    }
+
+    public void remove(Job job) {
+        store.remove(job.operationName());
+    }
+
+    /**
+     * Усі незавершені генерації
+     */
+    public List<Job> list() {
+        List<Job> jobs = new ArrayList<>();
+        for (Map.Entry<String, String> entry : store.asMap().entrySet()) {
+            String[] parts = entry.getValue().split("\\|", 4);
+            if (parts.length == 4)
+                jobs.add(new Job(parts[0], entry.getKey(), parts[3], Long.parseLong(parts[1]), parts[2]));
+        }
+        return jobs;
+    }
+
+    public void flush() {
+        store.flush();
+    }
+}
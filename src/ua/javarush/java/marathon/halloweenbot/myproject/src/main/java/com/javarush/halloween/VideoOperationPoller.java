@@ -0,0 +1,130 @@
+package com.javarush.halloween;
+
+import com.google.genai.Client;
+import com.google.genai.types.GenerateVideosOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Спільний планувальник опитування тривалих операцій Veo (LRO).
+ * Замість окремого «сплячого» потоку на кожне відео один планувальник
+ * опитує всі операції з адаптивною затримкою: спочатку часто, потім рідше.
+ * Для кожної операції повертається future, яке завершується, коли відео готове.
+ */
+public class VideoOperationPoller {
+    private static final Logger log = LoggerFactory.getLogger(VideoOperationPoller.class);
+
+    // Перше опитування — швидко, далі інтервал зростає в BACKOFF_FACTOR разів
+    private static final long INITIAL_DELAY_MILLIS = 1_000;
+    private static final long MAX_DELAY_MILLIS = 15_000;
+    private static final double BACKOFF_FACTOR = 1.5;
+
+    private final Supplier<Client> client;
+    private final long timeoutNanos;
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService pollExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<PendingOperation> pending = ConcurrentHashMap.newKeySet();
+
+    public VideoOperationPoller(Supplier<Client> client, Duration timeout) {
+        this.client = client;
+        this.timeoutNanos = timeout.toNanos();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "veo-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Metrics.gauge("bot_video_operations_pending", this::getPendingCount);
+    }
+
+    /**
+     * Чекаємо завершення операції op без блокування потоку
+     */
+    public CompletableFuture<GenerateVideosOperation> await(GenerateVideosOperation op) {
+        return await(op, Duration.ZERO);
+    }
+
+    /**
+     * Те саме для операції, яку почали раніше (наприклад, до перезапуску бота):
+     * elapsed уже зараховується в тайм-аут
+     */
+    public CompletableFuture<GenerateVideosOperation> await(GenerateVideosOperation op, Duration elapsed) {
+        var operation = new PendingOperation(op, System.nanoTime() - elapsed.toNanos());
+        if (op.done().orElse(false)) {
+            operation.future.complete(op);
+            return operation.future;
+        }
+
+        pending.add(operation);
+        operation.future.whenComplete((r, e) -> pending.remove(operation));
+        schedule(operation);
+        return operation.future;
+    }
+
+    /**
+     * Кількість операцій, які ще генеруються
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void schedule(PendingOperation operation) {
+        scheduler.schedule(() -> pollExecutor.execute(() -> poll(operation)), operation.delayMillis, TimeUnit.MILLISECONDS);
+        operation.delayMillis = Math.min(MAX_DELAY_MILLIS, (long) (operation.delayMillis * BACKOFF_FACTOR));
+    }
+
+    private void poll(PendingOperation operation) {
+        try {
+            // Опитуємо стан операції за допомогою getVideosOperation
+            operation.op = client.get().operations.getVideosOperation(operation.op, null);
+
+            if (operation.op.done().orElse(false)) {
+                Metrics.observe("bot_video_operation_wait_seconds", System.nanoTime() - operation.started);
+                operation.future.complete(operation.op);
+            } else if (System.nanoTime() - operation.started > timeoutNanos) {
+                long minutes = TimeUnit.NANOSECONDS.toMinutes(timeoutNanos);
+                operation.future.completeExceptionally(new RuntimeException("Очікування генерації відео перевищило " + minutes + " хвилин."));
+            } else {
+                schedule(operation);
+            }
+        } catch (Exception e) {
+            // Мережа, 429 чи 5xx під час опитування — операція на сервері живе далі, просто спитаємо пізніше
+            if (ModelGuard.isTransient(e) && System.nanoTime() - operation.started <= timeoutNanos) {
+                log.warn("Тимчасова помилка опитування операції Veo, повторимо пізніше: {}", e.toString());
+                Metrics.increment("bot_video_poll_errors_total");
+                schedule(operation);
+            } else {
+                operation.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        pollExecutor.shutdownNow();
+    }
+
+    private static class PendingOperation {
+        private final CompletableFuture<GenerateVideosOperation> future = new CompletableFuture<>();
+        private final long started;
+        private volatile GenerateVideosOperation op;
+        private volatile long delayMillis = INITIAL_DELAY_MILLIS;
+
+        PendingOperation(GenerateVideosOperation op, long started) {
+            this.op = op;
+            this.started = started;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.javarush.halloween;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Тренувальний запуск для AOT-кешу JVM (див. Dockerfile).
+ * Проходимо шляхом старту бота без мережі: налаштування, шаблони, сховища, клієнти,
+ * розбір події Telegram і перекодування картинки — класи потрапляють у кеш,
+ * і справжній старт у контейнері їх уже не завантажує й не лінкує.
+ */
+final class Warmup {
+    private static final String SAMPLE_UPDATE = """
+            {"update_id":1,"message":{"message_id":1,"date":0,
+             "from":{"id":1,"is_bot":false,"first_name":"warmup"},
+             "chat":{"id":1,"type":"private"},"text":"/start",
+             "entities":[{"type":"bot_command","offset":0,"length":6}]}}
+            """;
+
+    private Warmup() {
+    }
+
+    static void run() {
+        long started = System.nanoTime();
+
+        var bot = new HalloweenBoltApp(AppConfig.get().get("TELEGRAM_TOKEN", "0:warmup"));
+        try {
+            bot.onInitialize();
+
+            Update update = new ObjectMapper()
+                    .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                    .readValue(SAMPLE_UPDATE, Update.class);
+            bot.getChatKey(update);
+
+            ImageTranscoder transcoder = new ImageTranscoder();
+            transcoder.toJpeg(samplePng(), "image/png");
+            transcoder.shutdown();
+
+            Metrics.scrape();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            bot.shutdown();
+        }
+
+        System.out.printf("Warmup завершено за %d мс%n", (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static byte[] samplePng() throws IOException {
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB), "png", out);
+        return out.toByteArray();
+    }
+}
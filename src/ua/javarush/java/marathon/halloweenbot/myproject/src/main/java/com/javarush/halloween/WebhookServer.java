@@ -0,0 +1,112 @@
+package com.javarush.halloween;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Приймаємо події від Telegram через webhook замість long polling.
+ * Кожен запит обробляється на віртуальному потоці: перевіряємо секрет,
+ * одразу відповідаємо 200, а подію віддаємо в ту саму чергу bot.consume(...).
+ *
+ * Перевірити локально можна без Telegram — див. TelegramStandIn (src/test): заглушка Bot API,
+ * яка сама надсилає події на зареєстрований webhook.
+ */
+public class WebhookServer {
+    private static final Logger log = LoggerFactory.getLogger(WebhookServer.class);
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    // Telegram не надсилає великих подій, а більший запит — явно не від нього
+    private static final int MAX_BODY_BYTES = 1 << 20;
+
+    private final HttpServer server;
+    private final SimpleTelegramBot bot;
+    private final byte[] secret;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public WebhookServer(SimpleTelegramBot bot, String host, int port, String path, String secret) {
+        if (secret == null || secret.isBlank())
+            throw new RuntimeException("Для webhook потрібен WEBHOOK_SECRET");
+
+        this.bot = bot;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException("Не вдалося запустити webhook-сервер на " + host + ":" + port, e);
+        }
+
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext(path, this::handle);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            // Порівняння за сталий час — щоб секрет не можна було підібрати за часом відповіді
+            String header = exchange.getRequestHeaders().getFirst(SECRET_HEADER);
+            if (header == null || !MessageDigest.isEqual(secret, header.getBytes(StandardCharsets.UTF_8))) {
+                Metrics.increment("bot_webhook_requests_total", "status", "forbidden");
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+
+            // Некоректну чи завелику подію Telegram повторював би на будь-яку відповідь, крім 2xx,
+            // а повтор нічого не виправить — тож рахуємо, пишемо в лог і підтверджуємо
+            Update update;
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+                if (body.length > MAX_BODY_BYTES) {
+                    log.warn("Подія webhook завелика: понад {} байт", MAX_BODY_BYTES);
+                    Metrics.increment("bot_webhook_requests_total", "status", "too_large");
+                    exchange.sendResponseHeaders(200, -1);
+                    return;
+                }
+                update = mapper.readValue(body, Update.class);
+            } catch (IOException e) {
+                log.warn("Не вдалося розібрати подію webhook", e);
+                Metrics.increment("bot_webhook_requests_total", "status", "bad_request");
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            // Telegram чекає відповіді — підтверджуємо одразу, обробка йде у черзі чату
+            exchange.sendResponseHeaders(200, -1);
+            Metrics.increment("bot_webhook_requests_total", "status", "ok");
+            bot.consume(List.of(update));
+        }
+    }
+
+    public void start() {
+        server.start();
+        log.info("Webhook слухає на {}:{}", server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    /**
+     * Порт, на якому слухає сервер (корисно, якщо запускали з портом 0)
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,79 @@
+package com.javarush.halloween;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Відкладений запис файлів на диск (write-behind).
+ * Обробник лише передає байти й одразу продовжує роботу, а запис виконується у фоні.
+ * Якщо той самий файл оновили кілька разів поспіль — на диск потрапить лише остання версія.
+ */
+public class WriteBehindWriter {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindWriter.class);
+
+    private final ConcurrentHashMap<Path, byte[]> pending = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Поставити файл у чергу на запис
+     */
+    public void write(Path path, byte[] bytes) {
+        // Якщо запис цього файла вже в черзі чи виконується — він і запише нову версію
+        if (pending.put(path, bytes) == null)
+            executor.execute(() -> flush(path));
+    }
+
+    /**
+     * Байти файла, який ще не встиг записатися (або null)
+     */
+    public byte[] getPending(Path path) {
+        return pending.get(path);
+    }
+
+    /**
+     * Дописуємо все, що лишилося в черзі
+     */
+    public void close() {
+        // Для кожного файла з pending уже заплановано flush — лише дочікуємося їх
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Запис у pending лишається, доки файл не переміщено на місце, тож для одного path
+     * завжди працює лише один flush. Нова версія, що прийшла під час запису, пишеться наступною.
+     */
+    private void flush(Path path) {
+        byte[] bytes = pending.get(path);
+        while (bytes != null) {
+            writeFile(path, bytes);
+            if (pending.remove(path, bytes))
+                return;
+            bytes = pending.get(path);
+        }
+    }
+
+    private static void writeFile(Path path, byte[] bytes) {
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Не вдалося записати {}", path, e);
+        }
+    }
+}
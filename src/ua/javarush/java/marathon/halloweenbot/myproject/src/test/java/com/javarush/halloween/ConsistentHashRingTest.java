@@ -0,0 +1,91 @@
+package com.javarush.halloween;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ConsistentHashRing: при зміні складу вузлів переходить ~1/N ключів і лише туди (звідти), де змінився вузол,
+ * а remove + add повертає розподіл до попереднього.
+ */
+class ConsistentHashRingTest {
+    // Як у ClusterIngress
+    private static final int VIRTUAL_NODES = 128;
+    private static final int KEYS = 20_000;
+    private static final int NODES = 4;
+
+    @Test
+    void addingNodeMovesAboutOneNthOfKeysAndOnlyToIt() {
+        ConsistentHashRing<String> ring = ringOf(NODES);
+        Map<Integer, String> before = assignments(ring);
+
+        ring.add("worker-" + NODES);
+        Map<Integer, String> after = assignments(ring);
+
+        int moved = 0;
+        for (int key = 0; key < KEYS; key++) {
+            if (!before.get(key).equals(after.get(key))) {
+                moved++;
+                assertEquals("worker-" + NODES, after.get(key), "ключ " + key + " перейшов не на новий вузол");
+            }
+        }
+        assertAboutOneNth(moved, NODES + 1);
+    }
+
+    @Test
+    void removingNodeMovesOnlyItsKeys() {
+        ConsistentHashRing<String> ring = ringOf(NODES);
+        Map<Integer, String> before = assignments(ring);
+
+        ring.remove("worker-0");
+        Map<Integer, String> after = assignments(ring);
+
+        int moved = 0;
+        for (int key = 0; key < KEYS; key++) {
+            if (!before.get(key).equals(after.get(key))) {
+                moved++;
+                assertEquals("worker-0", before.get(key), "ключ " + key + " перейшов, хоча його вузол лишився");
+            }
+        }
+        assertAboutOneNth(moved, NODES);
+    }
+
+    @Test
+    void removeThenAddRestoresMapping() {
+        ConsistentHashRing<String> ring = ringOf(NODES);
+        Map<Integer, String> before = assignments(ring);
+
+        assertTrue(ring.remove("worker-2"));
+        assertTrue(ring.add("worker-2"));
+
+        assertEquals(before, assignments(ring));
+    }
+
+    private static ConsistentHashRing<String> ringOf(int nodes) {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(VIRTUAL_NODES);
+        for (int i = 0; i < nodes; i++)
+            ring.add("worker-" + i);
+        return ring;
+    }
+
+    private static Map<Integer, String> assignments(ConsistentHashRing<String> ring) {
+        Map<Integer, String> result = new HashMap<>();
+        for (int key = 0; key < KEYS; key++)
+            result.put(key, ring.get(key));
+        return result;
+    }
+
+    /**
+     * Частка переміщених ключів близька до 1/n (із запасом на нерівномірність віртуальних вузлів)
+     */
+    private static void assertAboutOneNth(int moved, int n) {
+        double share = (double) moved / KEYS;
+        double expected = 1.0 / n;
+        assertTrue(share > expected * 0.5 && share < expected * 1.5,
+                "перейшло " + moved + " ключів (" + share + "), очікували близько " + expected);
+    }
+}
@@ -0,0 +1,320 @@
+package com.javarush.halloween;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Заглушка Telegram Bot API для локальних перевірок без справжнього Telegram.
+ * - відповідає на виклики бота (sendMessage, sendPhoto, getFile, setWebhook, ...) правдоподібним "ok";
+ * - запамʼятовує URL і секрет із setWebhook і сама надсилає туди події:
+ *   POST /updates?chat=42&text=/start, ...&photo=1 або ...&callback=create;
+ * - GET /calls повертає останні виклики бота (JSON), щоб перевірити відповіді.
+ *
+ * Лежить у тестових джерелах, тож у робочий jar і AOT-образ не потрапляє.
+ * Запуск після mvn package: java -cp target/test-classes:target/HaloweenBot-01-1.0-SNAPSHOT.jar com.javarush.halloween.TelegramStandIn,
+ * а бот — з TELEGRAM_API_URL=http://127.0.0.1:STANDIN_PORT і WEBHOOK_URL (режим webhook).
+ * Long polling заглушка не підтримує.
+ */
+public class TelegramStandIn {
+    private static final Logger log = LoggerFactory.getLogger(TelegramStandIn.class);
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    private static final Pattern BOT_METHOD = Pattern.compile("^/bot[^/]+/(\\w+)$");
+    private static final Pattern MULTIPART_CHAT_ID = Pattern.compile("name=\"chat_id\"\\r?\\n(?:[^\\r\\n]*\\r?\\n)*?\\r?\\n([^\\r\\n]+)");
+    private static final int MAX_CALLS = 1000;
+
+    private final HttpServer server;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient webhookClient = HttpClient.newHttpClient();
+    private final AtomicLong ids = new AtomicLong();
+    private final Deque<JsonNode> calls = new ArrayDeque<>();
+
+    private volatile String webhookUrl;
+    private volatile String webhookSecret;
+
+    public TelegramStandIn(String host, int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException("Не вдалося запустити заглушку Telegram на " + host + ":" + port, e);
+        }
+
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/updates", this::handleInject);
+        server.createContext("/calls", this::handleCalls);
+        server.createContext("/file/", this::handleFile);
+        server.createContext("/", this::handleBotApi);
+    }
+
+    public static void main(String[] args) {
+        AppConfig env = AppConfig.get();
+        var standIn = new TelegramStandIn(env.get("STANDIN_HOST", "127.0.0.1"), env.getInt("STANDIN_PORT", 8090));
+        standIn.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(standIn::stop, "shutdown"));
+    }
+
+    public void start() {
+        server.start();
+        log.info("Заглушка Telegram слухає на http://{}:{}", server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Виклик Bot API: /bot<token>/<method>
+     */
+    private void handleBotApi(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Matcher matcher = BOT_METHOD.matcher(exchange.getRequestURI().getPath());
+            if (!matcher.matches()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            String method = matcher.group(1);
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            JsonNode params = parseParams(contentType, body);
+
+            record(method, params);
+            ObjectNode response = mapper.createObjectNode().put("ok", true);
+            response.set("result", result(method, params));
+            sendJson(exchange, 200, response);
+        }
+    }
+
+    private JsonNode parseParams(String contentType, byte[] body) {
+        if (contentType != null && contentType.startsWith("multipart/")) {
+            // Файли нас не цікавлять — лише чат, куди бот щось надсилає
+            ObjectNode params = mapper.createObjectNode();
+            Matcher matcher = MULTIPART_CHAT_ID.matcher(new String(body, StandardCharsets.ISO_8859_1));
+            if (matcher.find())
+                params.put("chat_id", matcher.group(1).trim());
+            return params;
+        }
+        try {
+            return body.length == 0 ? mapper.createObjectNode() : mapper.readTree(body);
+        } catch (IOException e) {
+            return mapper.createObjectNode();
+        }
+    }
+
+    private JsonNode result(String method, JsonNode params) {
+        return switch (method) {
+            case "sendMessage", "editMessageText", "editMessageReplyMarkup" -> message(params, null);
+            case "sendPhoto" -> message(params, "photo");
+            case "sendVideo" -> message(params, "video");
+            case "getFile" -> mapper.createObjectNode()
+                    .put("file_id", params.path("file_id").asText())
+                    .put("file_unique_id", params.path("file_id").asText())
+                    .put("file_path", "photos/" + params.path("file_id").asText() + ".jpg");
+            case "getMe" -> mapper.createObjectNode()
+                    .put("id", 1).put("is_bot", true).put("first_name", "stand-in").put("username", "standin_bot");
+            case "setWebhook" -> {
+                webhookUrl = params.path("url").asText(null);
+                webhookSecret = params.path("secret_token").asText(null);
+                log.info("Webhook: {}", webhookUrl);
+                yield mapper.getNodeFactory().booleanNode(true);
+            }
+            case "deleteWebhook" -> {
+                webhookUrl = null;
+                yield mapper.getNodeFactory().booleanNode(true);
+            }
+            default -> mapper.getNodeFactory().booleanNode(true);
+        };
+    }
+
+    private ObjectNode message(JsonNode params, String media) {
+        long chatId = params.path("chat_id").asLong();
+        ObjectNode message = mapper.createObjectNode()
+                .put("message_id", params.has("message_id") ? params.path("message_id").asLong() : ids.incrementAndGet())
+                .put("date", System.currentTimeMillis() / 1000);
+        message.putObject("chat").put("id", chatId).put("type", "private");
+        if (params.has("text"))
+            message.put("text", params.path("text").asText());
+
+        String fileId = "standin-" + media + "-" + ids.incrementAndGet();
+        if ("photo".equals(media)) {
+            // Бот кешує file_id надісланих картинок — віддаємо його, як справжній Telegram
+            message.putArray("photo").addObject()
+                    .put("file_id", fileId).put("file_unique_id", fileId).put("width", 512).put("height", 512);
+        } else if ("video".equals(media)) {
+            message.putObject("video")
+                    .put("file_id", fileId).put("file_unique_id", fileId)
+                    .put("width", 512).put("height", 512).put("duration", 1);
+        }
+        return message;
+    }
+
+    /**
+     * Вміст файла для getFile: будь-яке «фото користувача» — це images/main.jpg
+     */
+    private void handleFile(HttpExchange exchange) throws IOException {
+        try (exchange; InputStream in = ClassLoader.getSystemResourceAsStream("images/main.jpg")) {
+            if (in == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] bytes = in.readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Надіслати подію на зареєстрований webhook: chat=<id> і одне з text / photo / callback
+     */
+    private void handleInject(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String url = webhookUrl;
+            if (url == null) {
+                sendJson(exchange, 409, mapper.createObjectNode().put("error", "webhook ще не зареєстровано"));
+                return;
+            }
+
+            Map<String, String> query = parseQuery(exchange.getRequestURI());
+            long chatId = Long.parseLong(query.getOrDefault("chat", "1"));
+            ObjectNode update = update(chatId, query);
+
+            var request = HttpRequest.newBuilder(URI.create(url))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(update)));
+            if (webhookSecret != null)
+                request.header(SECRET_HEADER, webhookSecret);
+
+            try {
+                HttpResponse<Void> response = webhookClient.send(request.build(), HttpResponse.BodyHandlers.discarding());
+                sendJson(exchange, 200, mapper.createObjectNode()
+                        .put("update_id", update.path("update_id").asLong())
+                        .put("webhook_status", response.statusCode()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exchange.sendResponseHeaders(503, -1);
+            }
+        }
+    }
+
+    private ObjectNode update(long chatId, Map<String, String> query) {
+        long updateId = ids.incrementAndGet();
+        ObjectNode update = mapper.createObjectNode().put("update_id", updateId);
+        ObjectNode from = mapper.createObjectNode()
+                .put("id", chatId).put("is_bot", false).put("first_name", "user" + chatId);
+
+        ObjectNode message = mapper.createObjectNode()
+                .put("message_id", updateId)
+                .put("date", System.currentTimeMillis() / 1000);
+        message.set("from", from);
+        message.putObject("chat").put("id", chatId).put("type", "private");
+
+        if (query.containsKey("callback")) {
+            ObjectNode callback = update.putObject("callback_query")
+                    .put("id", String.valueOf(updateId))
+                    .put("chat_instance", String.valueOf(chatId))
+                    .put("data", query.get("callback"));
+            callback.set("from", from);
+            callback.set("message", message);
+        } else if (query.containsKey("photo")) {
+            String fileId = "user-photo-" + updateId;
+            ArrayNode photo = message.putArray("photo");
+            photo.addObject().put("file_id", fileId).put("file_unique_id", fileId).put("width", 512).put("height", 512);
+            if (query.containsKey("text"))
+                message.put("caption", query.get("text"));
+            update.set("message", message);
+        } else {
+            String text = query.getOrDefault("text", "/start");
+            message.put("text", text);
+            if (text.startsWith("/")) {
+                int length = text.indexOf(' ') > 0 ? text.indexOf(' ') : text.length();
+                message.putArray("entities").addObject().put("type", "bot_command").put("offset", 0).put("length", length);
+            }
+            update.set("message", message);
+        }
+        return update;
+    }
+
+    private void handleCalls(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            ArrayNode result = mapper.createArrayNode();
+            synchronized (calls) {
+                result.addAll(calls);
+            }
+            sendJson(exchange, 200, result);
+        }
+    }
+
+    private void record(String method, JsonNode params) {
+        ObjectNode call = mapper.createObjectNode().put("method", method);
+        call.put("chat_id", params.path("chat_id").asText(""));
+        if (params.has("text"))
+            call.put("text", params.path("text").asText());
+        if (params.has("caption"))
+            call.put("caption", params.path("caption").asText());
+
+        log.info("{} → {}", method, call);
+        synchronized (calls) {
+            calls.addLast(call);
+            if (calls.size() > MAX_CALLS)
+                calls.removeFirst();
+        }
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode json) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(json);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> query = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null)
+            return query;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.put(key, value);
+        }
+        return query;
+    }
+}
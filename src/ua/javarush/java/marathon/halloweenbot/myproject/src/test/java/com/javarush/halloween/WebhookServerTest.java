@@ -0,0 +1,101 @@
+package com.javarush.halloween;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * WebhookServer: чужий секрет — 403, подія підтверджується одразу (ще до обробки)
+ * і доходить до bot.consume, а некоректна подія — 200 без обробки.
+ */
+class WebhookServerTest {
+    private static final String SECRET = "test-secret";
+    private static final String UPDATE = """
+            {"update_id": 7, "message": {"message_id": 1, "date": 0,
+             "chat": {"id": 42, "type": "private"}, "text": "/start"}}""";
+
+    private final BlockingQueue<Update> consumed = new LinkedBlockingQueue<>();
+    // Обробка «висить», доки тест її не відпустить: так видно, що 200 надходить раніше
+    private final CountDownLatch processing = new CountDownLatch(1);
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    private WebhookServer server;
+    private URI uri;
+
+    @BeforeEach
+    void start() {
+        SimpleTelegramBot bot = new SimpleTelegramBot("0:test") {
+            @Override
+            public void consume(List<Update> updates) {
+                consumed.addAll(updates);
+                try {
+                    processing.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        server = new WebhookServer(bot, "127.0.0.1", 0, "/telegram", SECRET);
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getPort() + "/telegram");
+    }
+
+    @AfterEach
+    void stop() {
+        processing.countDown();
+        server.stop();
+    }
+
+    @Test
+    void rejectsWrongOrMissingSecret() throws Exception {
+        assertEquals(403, post("wrong-secret", UPDATE).statusCode());
+        assertEquals(403, post(null, UPDATE).statusCode());
+        assertTrue(consumed.isEmpty());
+    }
+
+    @Test
+    void acknowledgesBeforeProcessingAndDeliversUpdate() throws Exception {
+        // Обробка ще не відпущена, а відповідь уже є
+        assertEquals(200, post(SECRET, UPDATE).statusCode());
+
+        Update update = consumed.poll(5, TimeUnit.SECONDS);
+        assertNotNull(update);
+        assertEquals(7, update.getUpdateId());
+        assertEquals("/start", update.getMessage().getText());
+        assertEquals(1, processing.getCount());
+    }
+
+    @Test
+    void acknowledgesMalformedUpdateWithoutProcessing() throws Exception {
+        assertEquals(200, post(SECRET, "{not json").statusCode());
+        assertNull(consumed.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private HttpResponse<Void> post(String secret, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(5))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (secret != null)
+            request.header("X-Telegram-Bot-Api-Secret-Token", secret);
+        return http.send(request.build(), HttpResponse.BodyHandlers.discarding());
+    }
+}